@@ -0,0 +1,12 @@
+package com.antoniotari.reactiveampache.Exceptions;
+
+/**
+ * the request was not sent because the last requests to the server failed,
+ * the server is considered unhealthy until the circuit breaker lets a trial request through
+ */
+public class CircuitOpenException extends Exception {
+
+    public CircuitOpenException(final String server) {
+        super("too many failures, requests to " + server + " are paused");
+    }
+}
@@ -0,0 +1,20 @@
+package com.antoniotari.reactiveampache.Exceptions;
+
+import java.io.IOException;
+
+/**
+ * the server answered with an http status that is not successful
+ */
+public class HttpStatusException extends IOException {
+
+    private final int mCode;
+
+    public HttpStatusException(final int code, final String message) {
+        super("Unexpected code " + code + " " + message);
+        mCode = code;
+    }
+
+    public int getCode() {
+        return mCode;
+    }
+}
@@ -0,0 +1,12 @@
+package com.antoniotari.reactiveampache.Exceptions;
+
+/**
+ * the whole response was downloaded but it could not be parsed,
+ * downloading it again would give the same result so it's not retried
+ */
+public class ResponseParseException extends Exception {
+
+    public ResponseParseException(final String response, final Throwable cause) {
+        super("could not parse the " + response + ": " + cause.getMessage(), cause);
+    }
+}
@@ -16,37 +16,55 @@
 */
 package com.antoniotari.reactiveampache.api;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.antoniotari.reactiveampache.models.TagEntity;
 import com.antoniotari.reactiveampache.models.TagsResponse;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
 import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
 import com.antoniotari.reactiveampache.api.RawRequest.PlaylistType;
+import com.antoniotari.reactiveampache.api.SchedulerPolicy.Priority;
+import com.antoniotari.reactiveampache.db.CatalogDatabase;
 import com.antoniotari.reactiveampache.models.Album;
 import com.antoniotari.reactiveampache.models.AlbumsResponse;
 import com.antoniotari.reactiveampache.models.Artist;
 import com.antoniotari.reactiveampache.models.ArtistsResponse;
 import com.antoniotari.reactiveampache.models.BaseResponse;
+import com.antoniotari.reactiveampache.models.CatalogPage;
 import com.antoniotari.reactiveampache.models.HandshakeResponse;
+import com.antoniotari.reactiveampache.models.ModelInterner;
 import com.antoniotari.reactiveampache.models.PingResponse;
 import com.antoniotari.reactiveampache.models.Playlist;
 import com.antoniotari.reactiveampache.models.PlaylistsResponse;
 import com.antoniotari.reactiveampache.models.RateResponse;
 import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.SongTable;
 import com.antoniotari.reactiveampache.models.SongsResponse;
+import com.antoniotari.reactiveampache.models.SyncResult;
 import com.antoniotari.reactiveampache.utils.FileUtil;
+import com.antoniotari.reactiveampache.utils.Log;
+import com.antoniotari.reactiveampache.utils.MD5;
+import com.antoniotari.reactiveampache.utils.SongSearchIndex;
+import com.antoniotari.reactiveampache.utils.TolerantXmlParser.ParseErrorListener;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Subscriber;
-import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Action1;
-import rx.schedulers.Schedulers;
+import rx.functions.Func0;
+import rx.functions.Func1;
 
 /**
  * Created by antonio tari on 2016-05-21.
@@ -58,12 +76,321 @@ public enum AmpacheApi {
     private static final String FILENAME_ALBUMS = "com.antoniotari.ampache.library.response.albums.json";
     private static final String FILENAME_SONGS = "com.antoniotari.ampache.library.response.songs.json";
 
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final long TYPEAHEAD_DEBOUNCE_MS = 300;
+
     private RawRequest mRawRequest;
     private Context mContext;
+    private final RequestCoalescer mCoalescer = new RequestCoalescer();
+    private CatalogSync mCatalogSync;
+    private PersistentCache mPersistentCache;
+    private final EntityCache mEntityCache = new EntityCache((int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE));
+    private final SessionManager mSessionManager = new SessionManager();
+    private int mParseChunks = 1;
+    private boolean mLazyModels;
+    private int mResponseMemoSize;
+    private ParseErrorListener mParseErrorListener;
+    private volatile SchedulerPolicy mSchedulerPolicy = SchedulerPolicy.DEFAULT;
+    private volatile boolean mOfflineCatalog;
+    private CatalogDatabase mCatalog;
+    private String mCatalogOwner;
+    private final SongSearchIndex mSearchIndex = new SongSearchIndex();
+    private volatile boolean mLocalSearch;
+    // the index has all the songs of the catalog, not only the ones of some lists
+    private volatile boolean mSearchIndexComplete;
+    private final TypeaheadCache mTypeaheadCache = new TypeaheadCache(32);
 
     public void initSession(Context context) {
         AmpacheSession.INSTANCE.init(context);
         mContext = context.getApplicationContext();
+        mPersistentCache = new PersistentCache(mContext);
+        mContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(final int level) {
+                mEntityCache.onTrimMemory(level);
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                    mTypeaheadCache.clear();
+                    ModelInterner.clear();
+                    if (mRawRequest != null) {
+                        mRawRequest.clearResponseMemo();
+                    }
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(final Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                mEntityCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+                mTypeaheadCache.clear();
+                ModelInterner.clear();
+                if (mRawRequest != null) {
+                    mRawRequest.clearResponseMemo();
+                }
+            }
+        });
+        // warm up the connection if the user already logged in before
+        if (AmpacheSession.INSTANCE.getAmpacheUrl() != null && AmpacheSession.INSTANCE.getAmpacheUser() != null &&
+                AmpacheSession.INSTANCE.getAmpachePassword() != null) {
+            getRawRequest().prewarm();
+        }
+    }
+
+    /**
+     * tune the connection pool shared by all the requests, call before initUser.
+     * the number of requests made at the same time is set with the threads of setSchedulerPolicy
+     * @param maxIdleConnections    max number of idle connections kept in the pool
+     * @param keepAliveMinutes      how long an idle connection is kept alive
+     */
+    public void configureConnectionPool(final int maxIdleConnections, final long keepAliveMinutes) {
+        if (RawRequest.configureConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES)) {
+            mRawRequest = null;
+        }
+    }
+
+    /**
+     * choose the format of the list responses, xml by default.
+     * json is decoded with a streaming reader and needs ampache 4 or later,
+     * the format is kept for the next sessions. handshake again after changing it
+     */
+    public void setResponseFormat(final ResponseFormat responseFormat) {
+        AmpacheSession.INSTANCE.setResponseFormat(responseFormat);
+        if (mRawRequest != null) {
+            mRawRequest.setResponseFormat(responseFormat);
+        }
+    }
+
+    public ResponseFormat getResponseFormat() {
+        return AmpacheSession.INSTANCE.getResponseFormat();
+    }
+
+    /**
+     * parse the xml lists of songs, albums and artists on several cores, the list is downloaded first
+     * then split in chunks parsed at the same time
+     * @param parseChunks   number of chunks, 1 to parse while downloading on a single thread
+     */
+    public void setParseChunks(final int parseChunks) {
+        mParseChunks = Math.max(parseChunks, 1);
+        if (mRawRequest != null) {
+            mRawRequest.setParseChunks(mParseChunks);
+        }
+    }
+
+    /**
+     * read the xml lists of songs and albums into lazy models: url, mime, mode, year, art and the mbids
+     * are decoded only when their getter is called, the rest is decoded while parsing.
+     * the streaming methods and the json format always build complete models
+     */
+    public void setLazyModels(final boolean lazyModels) {
+        mLazyModels = lazyModels;
+        if (mRawRequest != null) {
+            mRawRequest.setLazyModels(mLazyModels);
+        }
+    }
+
+    /**
+     * share the artist, album and tag objects between the songs, albums and artists parsed from now on,
+     * e.g. the 400 songs of an artist reference a single InfoTag for the artist instead of 400 copies.
+     * the pool is emptied when the memory is low
+     */
+    public void setModelInterning(final boolean interning) {
+        ModelInterner.setEnabled(interning);
+    }
+
+    /**
+     * skip parsing the lists that didn't change: the body of every list request is hashed while it's downloaded
+     * and if it's the same body the query returned the last time, the objects parsed then are returned again
+     * in a new list, so changing a returned list doesn't change the next ones, the items must not be changed.
+     * useful for periodic refreshes, the lists are downloaded before they are parsed
+     * @param maxEntries    number of queries remembered, 0 to disable
+     */
+    public void setResponseMemoSize(final int maxEntries) {
+        mResponseMemoSize = Math.max(maxEntries, 0);
+        if (mRawRequest != null) {
+            mRawRequest.setResponseMemoSize(mResponseMemoSize);
+        }
+    }
+
+    /**
+     * tolerant parsing: when an xml list fails to parse it's parsed again from the bytes already downloaded,
+     * one element at a time, and the broken elements are left out instead of failing the whole list.
+     * without a listener a list that can't be parsed fails with ResponseParseException and it's not downloaded again
+     * @param listener  told about every element left out, on the request thread. null to disable
+     */
+    public void setParseErrorListener(final ParseErrorListener listener) {
+        mParseErrorListener = listener;
+        if (mRawRequest != null) {
+            mRawRequest.setParseErrorListener(mParseErrorListener);
+        }
+    }
+
+    /**
+     * choose the threads the requests run on and where their results are delivered, e.g. deliver them
+     * on the request thread to sort or store a big list before going to the main thread.
+     * the observables created before the call keep the previous policy
+     */
+    public void setSchedulerPolicy(final SchedulerPolicy schedulerPolicy) {
+        mSchedulerPolicy = schedulerPolicy == null ? SchedulerPolicy.DEFAULT : schedulerPolicy;
+        if (mRawRequest != null) {
+            mRawRequest.setParseExecutor(mSchedulerPolicy.getParseExecutor());
+        }
+    }
+
+    public SchedulerPolicy getSchedulerPolicy() {
+        return mSchedulerPolicy;
+    }
+
+    /**
+     * keep a copy of the catalog in a local database, filled by getArtists, getAlbums, getSongs,
+     * their cached and paged versions and sync.
+     * once the whole list of albums or songs has been stored, by a full sync or by downloading all of it,
+     * getAlbumsFromArtist, getSongsFromAlbum, getSongsFromArtist and getTagSongs are answered
+     * from the database, also when the server can't be reached, and go to the server only when
+     * the database has nothing for the given id. call after initSession
+     */
+    public void setOfflineCatalog(final boolean offlineCatalog) {
+        if (offlineCatalog && mContext == null) {
+            throw new IllegalStateException("call initSession before enabling the offline catalog");
+        }
+        mOfflineCatalog = offlineCatalog;
+    }
+
+    /**
+     * @return the local database of the current user, null if the offline catalog is disabled
+     */
+    private synchronized CatalogDatabase getCatalog() {
+        if (!mOfflineCatalog || AmpacheSession.INSTANCE.getAmpacheUrl() == null) return null;
+        String owner = MD5.md5(AmpacheSession.INSTANCE.getAmpacheUrl() + "|" + AmpacheSession.INSTANCE.getAmpacheUser());
+        if (mCatalog == null || !owner.equals(mCatalogOwner)) {
+            if (mCatalog != null) {
+                mCatalog.close();
+            }
+            mCatalog = new CatalogDatabase(mContext, "ampache_catalog_" + owner + ".db");
+            mCatalogOwner = owner;
+        }
+        return mCatalog;
+    }
+
+    /**
+     * search the songs in the index of the downloaded catalog instead of asking the server.
+     * the index is filled by the same requests as the offline catalog, and from the offline catalog
+     * itself when it has all the songs. searchSongs uses the index only once it has all the songs of the catalog,
+     * from a full sync or the download of all the songs, and goes to the server when nothing in the index matches
+     */
+    public void setLocalSearch(final boolean localSearch) {
+        mLocalSearch = localSearch;
+        if (!localSearch) {
+            clearSearchIndex();
+        }
+    }
+
+    private void clearSearchIndex() {
+        mSearchIndexComplete = false;
+        mSearchIndex.clear();
+    }
+
+    /**
+     * store the lists in the search index and in the local database,
+     * a failure only costs the offline copy, not the request
+     * @param complete  true if the lists that are not null are the whole catalog, not a page or a part of it
+     */
+    private void storeLocally(final List<Artist> artists, final List<Album> albums, final List<Song> songs,
+            final boolean complete) {
+        if (mLocalSearch) {
+            mSearchIndex.putSongs(songs);
+            if (complete && songs != null) {
+                mSearchIndexComplete = true;
+            }
+        }
+        CatalogDatabase catalog = getCatalog();
+        if (catalog == null) return;
+        try {
+            catalog.putArtists(artists);
+            catalog.putAlbums(albums);
+            catalog.putSongs(songs);
+            if (complete) {
+                if (artists != null) catalog.setComplete(CatalogDatabase.ARTISTS);
+                if (albums != null) catalog.setComplete(CatalogDatabase.ALBUMS);
+                if (songs != null) catalog.setComplete(CatalogDatabase.SONGS);
+            }
+        } catch (RuntimeException e) {
+            Log.error(e);
+        }
+    }
+
+    /**
+     * all the pages of a list were stored in the given database
+     * @param indexed   true if the local search was enabled when the first page was stored
+     */
+    private void storedComplete(final CatalogDatabase catalog, final boolean indexed, final String list) {
+        if (indexed && mLocalSearch && CatalogDatabase.SONGS.equals(list)) {
+            mSearchIndexComplete = true;
+        }
+        // the user or the offline catalog changed while the pages were downloaded
+        if (catalog == null || catalog != getCatalog()) return;
+        try {
+            catalog.setComplete(list);
+        } catch (RuntimeException e) {
+            Log.error(e);
+        }
+    }
+
+    /**
+     * @param list  CatalogDatabase.ARTISTS, ALBUMS or SONGS
+     * @return the local database if the whole list is stored in it, null otherwise
+     */
+    private CatalogDatabase getCompleteCatalog(final String list) {
+        CatalogDatabase catalog = getCatalog();
+        return catalog != null && catalog.isComplete(list) ? catalog : null;
+    }
+
+    /**
+     * a full sync replaces the local database, the others update it
+     */
+    private void storeLocally(final SyncResult syncResult) {
+        if (!syncResult.isFullSync()) {
+            storeLocally(syncResult.getArtists(), syncResult.getAlbums(), syncResult.getSongs(), false);
+            return;
+        }
+        if (mLocalSearch) {
+            mSearchIndex.replaceSongs(syncResult.getSongs());
+            mSearchIndexComplete = true;
+        }
+        CatalogDatabase catalog = getCatalog();
+        if (catalog == null) return;
+        try {
+            catalog.replaceCatalog(syncResult.getArtists(), syncResult.getAlbums(), syncResult.getSongs());
+        } catch (RuntimeException e) {
+            Log.error(e);
+        }
+    }
+
+    /**
+     * answer from the local copy when it has something for the query, from the network otherwise.
+     * the query returns null when the local copy is not complete and could miss some items
+     */
+    private <T> Observable<List<T>> fromLocal(final boolean enabled, final Callable<List<T>> query,
+            final Observable<List<T>> network) {
+        if (!enabled) return network;
+        return Observable.create(new OnSubscribe<List<T>>() {
+
+            @Override
+            public void call(final Subscriber<? super List<T>> subscriber) {
+                List<T> stored = null;
+                try {
+                    stored = query.call();
+                } catch (Exception e) {
+                    Log.error(e);
+                }
+                if (stored != null && !stored.isEmpty()) {
+                    Observable.just(stored).observeOn(mSchedulerPolicy.getDeliveryScheduler()).unsafeSubscribe(subscriber);
+                } else {
+                    network.unsafeSubscribe(subscriber);
+                }
+            }
+        }).subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE));
     }
 
     /**
@@ -94,12 +421,32 @@ public enum AmpacheApi {
                         ampacheUrlMod = ampacheUrl + "/";
                     }
 
+                    final boolean changed = !ampacheUrlMod.equals(AmpacheSession.INSTANCE.getAmpacheUrl()) ||
+                            !ampacheUser.equals(AmpacheSession.INSTANCE.getAmpacheUser());
+
                     // initialize the session
                     AmpacheSession.INSTANCE.setAmpachePassword(ampachePassword);
                     AmpacheSession.INSTANCE.setAmpacheUrl(ampacheUrlMod);
                     AmpacheSession.INSTANCE.setAmpacheUser(ampacheUser);
+                    if (changed) {
+                        // the catalog the app keeps from the previous syncs is of another server or user
+                        resetSync();
+                        // the ids of the other server would find its songs, albums and artists
+                        mEntityCache.clear();
+                        ModelInterner.clear();
+                    }
+                    // the index is filled again with the catalog of the user
+                    clearSearchIndex();
+                    mTypeaheadCache.clear();
                     // initialize raw request
                     mRawRequest = new RawRequest(ampacheUrlMod, ampacheUser, ampachePassword);
+                    mRawRequest.setResponseFormat(AmpacheSession.INSTANCE.getResponseFormat());
+                    mRawRequest.setParseChunks(mParseChunks);
+                    mRawRequest.setLazyModels(mLazyModels);
+                    mRawRequest.setResponseMemoSize(mResponseMemoSize);
+                    mRawRequest.setParseErrorListener(mParseErrorListener);
+                    mRawRequest.setParseExecutor(mSchedulerPolicy.getParseExecutor());
+                    mRawRequest.prewarm();
                     subscriber.onNext(AmpacheSession.INSTANCE);
                     subscriber.onCompleted();
                 } catch (Exception e) {
@@ -123,6 +470,12 @@ public enum AmpacheApi {
             mRawRequest = new RawRequest(AmpacheSession.INSTANCE.getAmpacheUrl(),
                     AmpacheSession.INSTANCE.getAmpacheUser(),
                     AmpacheSession.INSTANCE.getAmpachePassword());
+            mRawRequest.setResponseFormat(AmpacheSession.INSTANCE.getResponseFormat());
+            mRawRequest.setParseChunks(mParseChunks);
+            mRawRequest.setLazyModels(mLazyModels);
+            mRawRequest.setResponseMemoSize(mResponseMemoSize);
+            mRawRequest.setParseErrorListener(mParseErrorListener);
+            mRawRequest.setParseExecutor(mSchedulerPolicy.getParseExecutor());
         }
         return mRawRequest;
     }
@@ -131,266 +484,795 @@ public enum AmpacheApi {
      * before making any API call must handshake with the server
      */
     public Observable<HandshakeResponse> handshake() {
-        return Observable.create(new OnSubscribe<HandshakeResponse>() {
+        return retrying(RetryPolicy.SESSION, Priority.INTERACTIVE, Observable.create(new OnSubscribe<HandshakeResponse>() {
 
             @Override
             public void call(final Subscriber<? super HandshakeResponse> subscriber) {
                 try {
                     HandshakeResponse handshakeResponse = getRawRequest().handshake();
                     if (handshakeResponse.getError() != null) throw new AmpacheApiException(handshakeResponse.getError());
-                    AmpacheSession.INSTANCE.setHandshakeResponse(handshakeResponse);
+                    mSessionManager.onHandshake(handshakeResponse);
                     subscriber.onNext(handshakeResponse);
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .retry(4)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
     }
 
     /**
      * get a list of all the artists
      */
     public Observable<List<Artist>> getArtists() {
-        return Observable.create(new OnSubscribe<List<Artist>>() {
+        return mCoalescer.coalesce("artists", null, retrying(RetryPolicy.DEFAULT, Priority.BULK, Observable.create(new OnSubscribe<List<Artist>>() {
 
             @Override
             public void call(final Subscriber<? super List<Artist>> subscriber) {
                 try {
 
-                        ArtistsResponse artistsResponse = getRawRequest().getArtists(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
+                        ArtistsResponse artistsResponse = getRawRequest().getArtists(getAuth());
                         if (artistsResponse.getError() != null)
                             throw new AmpacheApiException(artistsResponse.getError());
 
 
+                    mEntityCache.putArtists(artistsResponse.getArtists());
+                    storeLocally(artistsResponse.getArtists(), null, null, true);
                     subscriber.onNext(artistsResponse.getArtists());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of all the albums for given artist
      */
     public Observable<List<Album>> getAlbumsFromArtist(final String artistId) {
-        return Observable.create(new OnSubscribe<List<Album>>() {
+        return fromLocal(mOfflineCatalog, new Callable<List<Album>>() {
+            @Override
+            public List<Album> call() throws Exception {
+                CatalogDatabase catalog = getCompleteCatalog(CatalogDatabase.ALBUMS);
+                return catalog == null ? null : catalog.getAlbumsFromArtist(artistId);
+            }
+        }, mCoalescer.coalesce("artist_albums", artistId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Album>>() {
 
             @Override
             public void call(final Subscriber<? super List<Album>> subscriber) {
                 try {
                     AlbumsResponse albumsResponse =
-                            getRawRequest().getAlbumsFromArtist(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), artistId);
+                            getRawRequest().getAlbumsFromArtist(getAuth(), artistId);
                     if (albumsResponse.getError()!=null) throw new AmpacheApiException(albumsResponse.getError());
+                    mEntityCache.putAlbums(albumsResponse.getAlbums());
                     subscriber.onNext(albumsResponse.getAlbums());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler())));
     }
 
     /**
      * get a list of all the albums
      */
     public Observable<List<Album>> getAlbums() {
-        return Observable.create(new OnSubscribe<List<Album>>() {
+        return mCoalescer.coalesce("albums", null, retrying(RetryPolicy.DEFAULT, Priority.BULK, Observable.create(new OnSubscribe<List<Album>>() {
 
             @Override
             public void call(final Subscriber<? super List<Album>> subscriber) {
                 try {
 
-                        AlbumsResponse albumsResponse = getRawRequest().getAlbums(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
+                        AlbumsResponse albumsResponse = getRawRequest().getAlbums(getAuth());
                         if (albumsResponse.getError() != null)
                             throw new AmpacheApiException(albumsResponse.getError());
 
 
+                    mEntityCache.putAlbums(albumsResponse.getAlbums());
+                    storeLocally(null, albumsResponse.getAlbums(), null, true);
                     subscriber.onNext(albumsResponse.getAlbums());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get the album from the album id
      */
     public Observable<Album> getAlbumFromId(final String albumId) {
-        return Observable.create(new OnSubscribe<Album>() {
+        Album cached = mEntityCache.getAlbum(albumId);
+        if (cached != null) {
+            return Observable.just(cached).observeOn(mSchedulerPolicy.getDeliveryScheduler());
+        }
+        return mCoalescer.coalesce("album", albumId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<Album>() {
 
             @Override
             public void call(final Subscriber<? super Album> subscriber) {
                 try {
-                    AlbumsResponse albumResponse = getRawRequest().getAlbumFromId(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), albumId);
+                    AlbumsResponse albumResponse = getRawRequest().getAlbumFromId(getAuth(), albumId);
                     if (albumResponse.getError()!=null) throw new AmpacheApiException(albumResponse.getError());
+                    mEntityCache.putAlbums(albumResponse.getAlbums());
                     subscriber.onNext(albumResponse.getAlbums().get(0));
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get artist from artist id
      */
     public Observable<Artist> getArtistFromId(final String artistId) {
-        return Observable.create(new OnSubscribe<Artist>() {
+        Artist cached = mEntityCache.getArtist(artistId);
+        if (cached != null) {
+            return Observable.just(cached).observeOn(mSchedulerPolicy.getDeliveryScheduler());
+        }
+        return mCoalescer.coalesce("artist", artistId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<Artist>() {
 
             @Override
             public void call(final Subscriber<? super Artist> subscriber) {
                 try {
-                    ArtistsResponse artistsResponse = getRawRequest().getArtistFromId(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), artistId);
+                    ArtistsResponse artistsResponse = getRawRequest().getArtistFromId(getAuth(), artistId);
                     if (artistsResponse.getError()!=null) throw new AmpacheApiException(artistsResponse.getError());
+                    mEntityCache.putArtists(artistsResponse.getArtists());
                     subscriber.onNext(artistsResponse.getArtists().get(0));
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of all the songs
      */
     public Observable<List<Song>> getSongs() {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return mCoalescer.coalesce("songs", null, retrying(RetryPolicy.BULK, Priority.BULK, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
 
-                        SongsResponse songsResponse = getRawRequest().getSongs(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
+                        SongsResponse songsResponse = getRawRequest().getSongs(getAuth());
                         if (songsResponse.getError() != null)
                             throw new AmpacheApiException(songsResponse.getError());
+                    mEntityCache.putSongs(songsResponse.getSongs());
+                    storeLocally(null, null, songsResponse.getSongs(), true);
                     subscriber.onNext(songsResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(18)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
+    }
+
+    /**
+     * get all the songs in a compact table, the songs are added to the table while they are parsed
+     * so the full list of song objects is never in memory
+     */
+    public Observable<SongTable> getSongTable() {
+        return mCoalescer.coalesce("song_table", null, retrying(RetryPolicy.BULK, Priority.BULK, Observable.create(new OnSubscribe<SongTable>() {
+
+            @Override
+            public void call(final Subscriber<? super SongTable> subscriber) {
+                try {
+                    String auth = getAuth();
+                    // sized on the number of songs of the handshake, so the columns don't grow while the songs are added
+                    HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
+                    final SongTable.Builder builder = new SongTable.Builder(handshakeResponse == null ? 0 : handshakeResponse.getSongs());
+                    getRawRequest().streamSongs(auth, new ElementListener<Song>() {
+                        @Override
+                        public void onElement(final Song song) {
+                            builder.add(song);
+                        }
+                    });
+                    subscriber.onNext(builder.build());
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                }
+            }
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
+    }
+
+    /**
+     * stream all the artists, every artist is emitted as soon as it's parsed
+     * instead of waiting for the whole response to be downloaded.
+     * the artists are parsed only as fast as the subscriber requests them, ahead at most by the buffer of the delivery.
+     * not retried, the artists already emitted can't be taken back
+     */
+    public Observable<Artist> streamArtists() {
+        return streaming(new StreamingOnSubscribe<Artist>(mSchedulerPolicy.getScheduler(Priority.BULK)) {
+            @Override
+            void stream(final ElementListener<Artist> listener) throws Exception {
+                getRawRequest().streamArtists(getAuth(), caching(listener));
+            }
+        });
+    }
+
+    /**
+     * stream all the albums, every album is emitted as soon as it's parsed
+     */
+    public Observable<Album> streamAlbums() {
+        return streaming(new StreamingOnSubscribe<Album>(mSchedulerPolicy.getScheduler(Priority.BULK)) {
+            @Override
+            void stream(final ElementListener<Album> listener) throws Exception {
+                getRawRequest().streamAlbums(getAuth(), caching(listener));
+            }
+        });
+    }
+
+    /**
+     * stream all the songs, every song is emitted as soon as it's parsed
+     */
+    public Observable<Song> streamSongs() {
+        return streaming(new StreamingOnSubscribe<Song>(mSchedulerPolicy.getScheduler(Priority.BULK)) {
+            @Override
+            void stream(final ElementListener<Song> listener) throws Exception {
+                getRawRequest().streamSongs(getAuth(), caching(listener));
+            }
+        });
+    }
+
+    /**
+     * stream the songs with the given tag, every song is emitted as soon as it's parsed
+     */
+    public Observable<Song> streamTagSongs(final String tagId) {
+        return streaming(new StreamingOnSubscribe<Song>(mSchedulerPolicy.getScheduler(Priority.BULK)) {
+            @Override
+            void stream(final ElementListener<Song> listener) throws Exception {
+                getRawRequest().streamTagSongs(getAuth(), tagId, caching(listener));
+            }
+        });
+    }
+
+    /**
+     * stream the songs of the playlist, every song is emitted as soon as it's parsed
+     */
+    public Observable<Song> streamPlaylistSongs(final String playlistId) {
+        return streaming(new StreamingOnSubscribe<Song>(mSchedulerPolicy.getScheduler(Priority.BULK)) {
+            @Override
+            void stream(final ElementListener<Song> listener) throws Exception {
+                getRawRequest().streamPlaylistSongs(getAuth(), playlistId, caching(listener));
+            }
+        });
+    }
+
+    /**
+     * get a list of all the artists, the artists stored on the device are emitted right away
+     * then the list is downloaded and emitted again only if it changed
+     */
+    public Observable<List<Artist>> getArtistsCached() {
+        return CallScope.bind(mPersistentCache.staleWhileRevalidate(FILENAME_ARTISTS, new TypeToken<List<Artist>>(){}.getType(),
+                new Callable<List<Artist>>() {
+                    @Override
+                    public List<Artist> call() throws Exception {
+                        return withRetries(new Callable<List<Artist>>() {
+                            @Override
+                            public List<Artist> call() throws Exception {
+                                ArtistsResponse artistsResponse = getRawRequest().getArtists(getAuth());
+                                if (artistsResponse.getError() != null) throw new AmpacheApiException(artistsResponse.getError());
+                                mEntityCache.putArtists(artistsResponse.getArtists());
+                                storeLocally(artistsResponse.getArtists(), null, null, true);
+                                return artistsResponse.getArtists();
+                            }
+                        });
+                    }
+                }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * get a list of all the albums, the albums stored on the device are emitted right away
+     * then the list is downloaded and emitted again only if it changed
+     */
+    public Observable<List<Album>> getAlbumsCached() {
+        return CallScope.bind(mPersistentCache.staleWhileRevalidate(FILENAME_ALBUMS, new TypeToken<List<Album>>(){}.getType(),
+                new Callable<List<Album>>() {
+                    @Override
+                    public List<Album> call() throws Exception {
+                        return withRetries(new Callable<List<Album>>() {
+                            @Override
+                            public List<Album> call() throws Exception {
+                                AlbumsResponse albumsResponse = getRawRequest().getAlbums(getAuth());
+                                if (albumsResponse.getError() != null) throw new AmpacheApiException(albumsResponse.getError());
+                                mEntityCache.putAlbums(albumsResponse.getAlbums());
+                                storeLocally(null, albumsResponse.getAlbums(), null, true);
+                                return albumsResponse.getAlbums();
+                            }
+                        });
+                    }
+                }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * get a list of all the songs, the songs stored on the device are emitted right away
+     * then the list is downloaded and emitted again only if it changed
+     */
+    public Observable<List<Song>> getSongsCached() {
+        return CallScope.bind(mPersistentCache.staleWhileRevalidate(FILENAME_SONGS, new TypeToken<List<Song>>(){}.getType(),
+                new Callable<List<Song>>() {
+                    @Override
+                    public List<Song> call() throws Exception {
+                        return withRetries(new Callable<List<Song>>() {
+                            @Override
+                            public List<Song> call() throws Exception {
+                                SongsResponse songsResponse = getRawRequest().getSongs(getAuth());
+                                if (songsResponse.getError() != null) throw new AmpacheApiException(songsResponse.getError());
+                                mEntityCache.putSongs(songsResponse.getSongs());
+                                storeLocally(null, null, songsResponse.getSongs(), true);
+                                return songsResponse.getSongs();
+                            }
+                        });
+                    }
+                }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * get all the artists one page at a time, every page is emitted as soon as it arrives
+     * @param pageSize  number of artists requested for each page
+     */
+    public Observable<CatalogPage<Artist>> getArtistsPaged(final int pageSize) {
+        return paged(artistsFetcher, pageSize);
+    }
+
+    /**
+     * get all the albums one page at a time, every page is emitted as soon as it arrives
+     * @param pageSize  number of albums requested for each page
+     */
+    public Observable<CatalogPage<Album>> getAlbumsPaged(final int pageSize) {
+        return paged(albumsFetcher, pageSize);
+    }
+
+    /**
+     * get all the songs one page at a time, every page is emitted as soon as it arrives
+     * @param pageSize  number of songs requested for each page
+     */
+    public Observable<CatalogPage<Song>> getSongsPaged(final int pageSize) {
+        return paged(songsFetcher, pageSize);
+    }
+
+    /**
+     * get a list of all the albums downloading the catalog in windows fetched in parallel,
+     * the albums are in the same order the server would return them in a single request
+     * @param windows       number of offset windows the catalog is split into
+     * @param parallelism   max number of windows downloaded at the same time, also limited by the bulk threads of the scheduler policy
+     */
+    public Observable<List<Album>> getAlbumsParallel(final int windows, final int parallelism) {
+        return sharded(albumsFetcher, windows, parallelism);
+    }
+
+    /**
+     * get a list of all the songs downloading the catalog in windows fetched in parallel,
+     * the songs are in the same order the server would return them in a single request
+     * @param windows       number of offset windows the catalog is split into
+     * @param parallelism   max number of windows downloaded at the same time, also limited by the bulk threads of the scheduler policy
+     */
+    public Observable<List<Song>> getSongsParallel(final int windows, final int parallelism) {
+        return sharded(songsFetcher, windows, parallelism);
+    }
+
+    private final PageFetcher<Artist> artistsFetcher = new PageFetcher<Artist>() {
+        @Override
+        public List<Artist> fetch(final String auth, final int offset, final int limit) throws Exception {
+            ArtistsResponse artistsResponse = getRawRequest().getArtists(auth, offset, limit);
+            if (artistsResponse.getError() != null) throw new AmpacheApiException(artistsResponse.getError());
+            mEntityCache.putArtists(artistsResponse.getArtists());
+            storeLocally(artistsResponse.getArtists(), null, null, false);
+            return artistsResponse.getArtists();
+        }
+
+        @Override
+        public int total(final HandshakeResponse handshakeResponse) {
+            return handshakeResponse.getArtists();
+        }
+
+        @Override
+        public String list() {
+            return CatalogDatabase.ARTISTS;
+        }
+    };
+
+    private final PageFetcher<Album> albumsFetcher = new PageFetcher<Album>() {
+        @Override
+        public List<Album> fetch(final String auth, final int offset, final int limit) throws Exception {
+            AlbumsResponse albumsResponse = getRawRequest().getAlbums(auth, offset, limit);
+            if (albumsResponse.getError() != null) throw new AmpacheApiException(albumsResponse.getError());
+            mEntityCache.putAlbums(albumsResponse.getAlbums());
+            storeLocally(null, albumsResponse.getAlbums(), null, false);
+            return albumsResponse.getAlbums();
+        }
+
+        @Override
+        public int total(final HandshakeResponse handshakeResponse) {
+            return handshakeResponse.getAlbums();
+        }
+
+        @Override
+        public String list() {
+            return CatalogDatabase.ALBUMS;
+        }
+    };
+
+    private final PageFetcher<Song> songsFetcher = new PageFetcher<Song>() {
+        @Override
+        public List<Song> fetch(final String auth, final int offset, final int limit) throws Exception {
+            SongsResponse songsResponse = getRawRequest().getSongs(auth, offset, limit);
+            if (songsResponse.getError() != null) throw new AmpacheApiException(songsResponse.getError());
+            mEntityCache.putSongs(songsResponse.getSongs());
+            storeLocally(null, null, songsResponse.getSongs(), false);
+            return songsResponse.getSongs();
+        }
+
+        @Override
+        public int total(final HandshakeResponse handshakeResponse) {
+            return handshakeResponse.getSongs();
+        }
+
+        @Override
+        public String list() {
+            return CatalogDatabase.SONGS;
+        }
+    };
+
+    private interface PageFetcher<T> {
+        List<T> fetch(String auth, int offset, int limit) throws Exception;
+
+        int total(HandshakeResponse handshakeResponse);
+
+        /**
+         * the list of the local database filled by the pages
+         */
+        String list();
+    }
+
+    /**
+     * walk the catalog with offset and limit until the server returns a page shorter than the page size.
+     * every page is retried on its own, a failure doesn't restart the pages already emitted.
+     * a page is downloaded only when the subscriber requested it, a slow subscriber holds back the download
+     * instead of piling up the pages. the pages are delivered on the delivery scheduler without a buffer
+     */
+    private <T> Observable<CatalogPage<T>> paged(final PageFetcher<T> fetcher, final int pageSize) {
+        if (pageSize <= 0) {
+            return Observable.error(new IllegalArgumentException("invalid page size " + pageSize));
+        }
+        return Observable.defer(new Func0<Observable<CatalogPage<T>>>() {
+            @Override
+            public Observable<CatalogPage<T>> call() {
+                final CatalogDatabase catalog = getCatalog();
+                final boolean indexed = mLocalSearch;
+                return Observable.create(new PagedOnSubscribe<T>(pageSize, mSchedulerPolicy.getScheduler(Priority.BULK),
+                        mSchedulerPolicy.getDeliveryScheduler()) {
+                    @Override
+                    int total() throws Exception {
+                        return catalogTotal(fetcher);
+                    }
+
+                    @Override
+                    List<T> fetch(final int offset, final int limit) throws Exception {
+                        return fetchPage(fetcher, offset, limit);
+                    }
+
+                    @Override
+                    void onLastPage() {
+                        storedComplete(catalog, indexed, fetcher.list());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * split the catalog in offset windows sized on the handshake totals, download them on the bulk pool
+     * with at most parallelism requests at the same time and put them back together in server order.
+     * the handshake totals can be stale, if the last window comes back full the rest of the catalog
+     * is paged sequentially
+     */
+    private <T> Observable<List<T>> sharded(final PageFetcher<T> fetcher, final int windows, final int parallelism) {
+        if (windows <= 0 || parallelism <= 0) {
+            return Observable.error(new IllegalArgumentException("invalid windows " + windows + " or parallelism " + parallelism));
+        }
+        return CallScope.bind(Observable.create(new OnSubscribe<List<T>>() {
+
+            @Override
+            public void call(final Subscriber<? super List<T>> subscriber) {
+                // the windows are downloaded on other threads of the bulk pool, they must be cancelled as well
+                final CallScope scope = CallScope.current();
+                final CatalogDatabase catalog = getCatalog();
+                final boolean indexed = mLocalSearch;
+                final int total;
+                try {
+                    total = catalogTotal(fetcher);
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                    return;
+                }
+                final int windowSize = total > 0 ? (total + windows - 1) / windows : DEFAULT_PAGE_SIZE;
+                final int windowCount = total > 0 ? (total + windowSize - 1) / windowSize : 1;
+
+                final AtomicReferenceArray<List<T>> windowItems = new AtomicReferenceArray<>(windowCount);
+                List<Observable<Void>> windowRequests = new ArrayList<>(windowCount);
+                for (int i = 0; i < windowCount; i++) {
+                    final int window = i;
+                    windowRequests.add(Observable.create(new OnSubscribe<Void>() {
+                        @Override
+                        public void call(final Subscriber<? super Void> windowSubscriber) {
+                            CallScope previous = CallScope.attach(scope);
+                            try {
+                                windowItems.set(window, fetchPage(fetcher, window * windowSize, windowSize));
+                                windowSubscriber.onCompleted();
+                            } catch (Exception e) {
+                                windowSubscriber.onError(e);
+                            } finally {
+                                CallScope.attach(previous);
+                            }
+                        }
+                    }).subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK)));
+                }
+
+                // no thread waits for the windows, so they can't starve the pool they run on
+                Observable.merge(windowRequests, parallelism).unsafeSubscribe(new Subscriber<Void>(subscriber) {
+                    @Override
+                    public void onNext(final Void aVoid) {
+                    }
+
+                    @Override
+                    public void onError(final Throwable e) {
+                        subscriber.onError(e);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        CallScope previous = CallScope.attach(scope);
+                        try {
+                            List<T> result = new ArrayList<>(Math.max(total, 0));
+                            List<T> lastWindow = null;
+                            for (int i = 0; i < windowCount; i++) {
+                                lastWindow = windowItems.get(i);
+                                if (lastWindow != null) {
+                                    result.addAll(lastWindow);
+                                }
+                            }
+
+                            // the catalog grew since the handshake
+                            int offset = windowCount * windowSize;
+                            while (lastWindow != null && lastWindow.size() == windowSize && !subscriber.isUnsubscribed()) {
+                                lastWindow = fetchPage(fetcher, offset, windowSize);
+                                if (lastWindow != null) {
+                                    result.addAll(lastWindow);
+                                    offset += lastWindow.size();
+                                }
+                            }
+                            if (!subscriber.isUnsubscribed()) {
+                                storedComplete(catalog, indexed, fetcher.list());
+                            }
+
+                            subscriber.onNext(result);
+                            subscriber.onCompleted();
+                        } catch (Exception e) {
+                            subscriber.onError(e);
+                        } finally {
+                            CallScope.attach(previous);
+                        }
+                    }
+                });
+            }
+        }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * the number of items of the catalog according to the handshake, 0 if it's not known
+     */
+    private <T> int catalogTotal(final PageFetcher<T> fetcher) throws Exception {
+        // makes the handshake if there is no session yet
+        getAuth();
+        HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
+        return handshakeResponse == null ? 0 : fetcher.total(handshakeResponse);
+    }
+
+    private <T> List<T> fetchPage(final PageFetcher<T> fetcher, final int offset, final int limit) throws Exception {
+        return withRetries(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return fetcher.fetch(getAuth(), offset, limit);
+            }
+        });
+    }
+
+    /**
+     * retry a request in place, for the observables that already emitted something
+     * and can't be retried as a whole
+     */
+    private <T> T withRetries(final Callable<T> request) throws Exception {
+        return RetryPolicy.DEFAULT.call(request, CircuitBreaker.forServer(AmpacheSession.INSTANCE.getAmpacheUrl()), doOnError);
     }
 
     /**
      * get a list of all the songs that match the filter
      */
     public Observable<List<Song>> searchSongs(final String filter) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return fromLocal(mLocalSearch, new Callable<List<Song>>() {
+            @Override
+            public List<Song> call() throws Exception {
+                // an index with only some songs would miss matches the server finds
+                if (!mSearchIndexComplete) {
+                    CatalogDatabase catalog = getCompleteCatalog(CatalogDatabase.SONGS);
+                    if (catalog == null) return null;
+                    mSearchIndex.replaceSongs(catalog.getSongs());
+                    mSearchIndexComplete = true;
+                }
+                return mSearchIndex.search(filter, 0);
+            }
+        }, mCoalescer.coalesce("search_songs", filter, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
-                    SongsResponse songsResponse = getRawRequest().searchSongs(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), filter);
+                    SongsResponse songsResponse = getRawRequest().searchSongs(getAuth(), filter);
                     if (songsResponse.getError()!=null) throw new AmpacheApiException(songsResponse.getError());
+                    mEntityCache.putSongs(songsResponse.getSongs());
                     subscriber.onNext(songsResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(18)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler())));
+    }
+
+    /**
+     * search the songs while the user types, e.g. the text changes of a search box.
+     * a query is searched only after no new text arrived for TYPEAHEAD_DEBOUNCE_MS and only if it's
+     * different from the previous one, a new query cancels the search still running for the previous one
+     * so an old result never replaces a newer one. a query that extends a query already searched on the
+     * server is filtered from its songs without asking the server again
+     * @param queries   the text of the search box every time it changes
+     * @return          the songs matching the latest query, an empty list for an empty query
+     */
+    public Observable<List<Song>> typeahead(final Observable<String> queries) {
+        return Observable.switchOnNext(queries
+                .debounce(TYPEAHEAD_DEBOUNCE_MS, TimeUnit.MILLISECONDS, mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .map(new Func1<String, String>() {
+                    @Override
+                    public String call(final String query) {
+                        return query == null ? "" : query.trim();
+                    }
+                })
+                .distinctUntilChanged()
+                .map(new Func1<String, Observable<List<Song>>>() {
+                    @Override
+                    public Observable<List<Song>> call(final String query) {
+                        return typeaheadSearch(query);
+                    }
+                }))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    private Observable<List<Song>> typeaheadSearch(final String query) {
+        if (query.isEmpty()) {
+            return Observable.just((List<Song>) new ArrayList<Song>());
+        }
+        // the local index is already fast and doesn't match like the server
+        if (mLocalSearch) {
+            return searchSongs(query);
+        }
+        List<Song> refined = mTypeaheadCache.refine(query);
+        if (refined != null) {
+            return Observable.just(refined);
+        }
+        return searchSongs(query).doOnNext(new Action1<List<Song>>() {
+            @Override
+            public void call(final List<Song> songs) {
+                mTypeaheadCache.put(query, songs);
+            }
+        });
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Song>> getSongsFromAlbum(final String albumId) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return fromLocal(mOfflineCatalog, new Callable<List<Song>>() {
+            @Override
+            public List<Song> call() throws Exception {
+                CatalogDatabase catalog = getCompleteCatalog(CatalogDatabase.SONGS);
+                return catalog == null ? null : catalog.getSongsFromAlbum(albumId);
+            }
+        }, mCoalescer.coalesce("album_songs", albumId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
                     SongsResponse songssResponse =
-                            getRawRequest().getSongsFromAlbum(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), albumId);
+                            getRawRequest().getSongsFromAlbum(getAuth(), albumId);
                     if (songssResponse.getError()!=null) throw new AmpacheApiException(songssResponse.getError());
+                    mEntityCache.putSongs(songssResponse.getSongs());
                     subscriber.onNext(songssResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler())));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Song>> getSongsFromArtist(final String artistId) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return fromLocal(mOfflineCatalog, new Callable<List<Song>>() {
+            @Override
+            public List<Song> call() throws Exception {
+                CatalogDatabase catalog = getCompleteCatalog(CatalogDatabase.SONGS);
+                return catalog == null ? null : catalog.getSongsFromArtist(artistId);
+            }
+        }, mCoalescer.coalesce("artist_songs", artistId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
                     SongsResponse songssResponse =
-                            getRawRequest().getArtistSongs(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), artistId);
+                            getRawRequest().getArtistSongs(getAuth(), artistId);
                     if (songssResponse.getError()!=null) throw new AmpacheApiException(songssResponse.getError());
+                    mEntityCache.putSongs(songssResponse.getSongs());
                     subscriber.onNext(songssResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler())));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<TagEntity>> getTags() {
-        return Observable.create(new OnSubscribe<List<TagEntity>>() {
+        return mCoalescer.coalesce("tags", null, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<TagEntity>>() {
 
             @Override
             public void call(final Subscriber<? super List<TagEntity>> subscriber) {
                 try {
                     TagsResponse songssResponse =
-                            getRawRequest().getTags(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
+                            getRawRequest().getTags(getAuth());
                     if (songssResponse.getError()!=null) throw new AmpacheApiException(songssResponse.getError());
                     subscriber.onNext(songssResponse.getTags());
                     subscriber.onCompleted();
@@ -398,24 +1280,22 @@ public enum AmpacheApi {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Playlist>> getPlaylists() {
-        return Observable.create(new OnSubscribe<List<Playlist>>() {
+        return mCoalescer.coalesce("playlists", null, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Playlist>>() {
 
             @Override
             public void call(final Subscriber<? super List<Playlist>> subscriber) {
                 try {
                     PlaylistsResponse songssResponse =
-                            getRawRequest().getPlaylists(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
+                            getRawRequest().getPlaylists(getAuth());
                     if (songssResponse.getError()!=null) throw new AmpacheApiException(songssResponse.getError());
                     subscriber.onNext(songssResponse.getPlaylists());
                     subscriber.onCompleted();
@@ -423,112 +1303,116 @@ public enum AmpacheApi {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Song>> getTagSongs(final String tagId) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return fromLocal(mOfflineCatalog, new Callable<List<Song>>() {
+            @Override
+            public List<Song> call() throws Exception {
+                CatalogDatabase catalog = getCompleteCatalog(CatalogDatabase.SONGS);
+                return catalog == null ? null : catalog.getTagSongs(tagId);
+            }
+        }, mCoalescer.coalesce("tag_songs", tagId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
                     SongsResponse songsResponse =
-                            getRawRequest().getTagSongs(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), tagId);
+                            getRawRequest().getTagSongs(getAuth(), tagId);
                     if (songsResponse.getError()!=null) throw new AmpacheApiException(songsResponse.getError());
+                    mEntityCache.putSongs(songsResponse.getSongs());
                     subscriber.onNext(songsResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler())));
     }
 
     public Observable<String> rateSong(final String songId, int rating) {
-        return Observable.create(new OnSubscribe<String>() {
+        return retrying(RetryPolicy.INTERACTIVE, Priority.INTERACTIVE, Observable.create(new OnSubscribe<String>() {
             @Override
             public void call(Subscriber<? super String> subscriber) {
                 try {
                     RateResponse response =
-                            getRawRequest().rateSong(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), songId, rating);
+                            getRawRequest().rateSong(getAuth(), songId, rating);
                     subscriber.onNext(response.getResponseText());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        }).doOnError(doOnError)
-                .retry(2)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
     }
 
     public Observable<String> addOrRemoveSongTag(final String songId, String tag, boolean remove) {
-        return Observable.create(new OnSubscribe<String>() {
+        return retrying(RetryPolicy.INTERACTIVE, Priority.INTERACTIVE, Observable.create(new OnSubscribe<String>() {
                     @Override
                     public void call(Subscriber<? super String> subscriber) {
                         try {
                             RateResponse response =
-                                    getRawRequest().addOrRemoveSongTag(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), songId, tag, remove);
+                                    getRawRequest().addOrRemoveSongTag(getAuth(), songId, tag, remove);
                             subscriber.onNext(response.getResponseText());
                             subscriber.onCompleted();
                         } catch (Exception e) {
                             subscriber.onError(e);
                         }
                     }
-                }).doOnError(doOnError)
-                .retry(2)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+                }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
     }
 
     public Observable<Song> getSong(final String songId) {
-        return Observable.create(new OnSubscribe<Song>() {
+        Song cached = mEntityCache.getSong(songId);
+        if (cached != null) {
+            return Observable.just(cached).observeOn(mSchedulerPolicy.getDeliveryScheduler());
+        }
+        return mCoalescer.coalesce("song", songId, retrying(RetryPolicy.INTERACTIVE, Priority.INTERACTIVE, Observable.create(new OnSubscribe<Song>() {
             @Override
             public void call(final Subscriber<? super Song> subscriber){
                 try {
                     SongsResponse songsResponse =
-                            getRawRequest().getSong(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), songId);
+                            getRawRequest().getSong(getAuth(), songId);
                     if (songsResponse.getError() != null) throw new AmpacheApiException(songsResponse.getError());
                     Song result = null;
                     if (songsResponse.getSongs()!=null && songsResponse.getSongs().size() > 0) {
                         result = songsResponse.getSongs().get(0);
                     }
+                    mEntityCache.putSong(result);
                     subscriber.onNext(result);
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(2)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Playlist>> getPlaylist(final String playlistId) {
-        return Observable.create(new OnSubscribe<List<Playlist>>() {
+        return mCoalescer.coalesce("playlist", playlistId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Playlist>>() {
 
             @Override
             public void call(final Subscriber<? super List<Playlist>> subscriber) {
                 try {
                     PlaylistsResponse songssResponse =
-                            getRawRequest().getPlaylist(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), playlistId);
+                            getRawRequest().getPlaylist(getAuth(), playlistId);
                     if (songssResponse.getError()!=null) throw new AmpacheApiException(songssResponse.getError());
                     subscriber.onNext(songssResponse.getPlaylists());
                     subscriber.onCompleted();
@@ -536,49 +1420,46 @@ public enum AmpacheApi {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Song>> getPlaylistSongs(final String playlistId) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return mCoalescer.coalesce("playlist_songs", playlistId, retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
                     SongsResponse songsResponse =
-                            getRawRequest().getPlaylistSongs(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), playlistId);
+                            getRawRequest().getPlaylistSongs(getAuth(), playlistId);
                     if (songsResponse.getError()!=null) throw new AmpacheApiException(songsResponse.getError());
+                    mEntityCache.putSongs(songsResponse.getSongs());
                     subscriber.onNext(songsResponse.getSongs());
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler()));
     }
 
     /**
      * get a list of songs from given album
      */
     public Observable<List<Song>> createPlaylist(final String name) {
-        return Observable.create(new OnSubscribe<List<Song>>() {
+        return retrying(RetryPolicy.DEFAULT, Priority.INTERACTIVE, Observable.create(new OnSubscribe<List<Song>>() {
 
             @Override
             public void call(final Subscriber<? super List<Song>> subscriber) {
                 try {
                     SongsResponse songsResponse =
-                            getRawRequest().createPlaylist(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth(), name, PlaylistType.PUBLIC);
+                            getRawRequest().createPlaylist(getAuth(), name, PlaylistType.PUBLIC);
                     if (songsResponse.getError()!=null) throw new AmpacheApiException(songsResponse.getError());
                     subscriber.onNext(songsResponse.getSongs());
                     subscriber.onCompleted();
@@ -586,62 +1467,175 @@ public enum AmpacheApi {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(9)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    private synchronized CatalogSync getCatalogSync() {
+        if (mCatalogSync == null) {
+            mCatalogSync = new CatalogSync(AmpacheSession.INSTANCE.getSharedPreferences());
+        }
+        return mCatalogSync;
     }
 
     /**
-     * ping the server to stay logged in
+     * sync the catalog, the first sync and every sync after the server cleaned the catalog
+     * return the whole catalog, the others only the artists, albums and songs added or updated
+     * since the previous sync
+     */
+    public Observable<SyncResult> sync() {
+        return retrying(RetryPolicy.BULK, Priority.BULK, Observable.create(new OnSubscribe<SyncResult>() {
+
+            @Override
+            public void call(final Subscriber<? super SyncResult> subscriber) {
+                try {
+                    HandshakeResponse handshakeResponse = getRawRequest().handshake();
+                    if (handshakeResponse.getError() != null) throw new AmpacheApiException(handshakeResponse.getError());
+                    mSessionManager.onHandshake(handshakeResponse);
+                    SyncResult syncResult = getCatalogSync().sync(getRawRequest(), handshakeResponse);
+                    mEntityCache.putArtists(syncResult.getArtists());
+                    mEntityCache.putAlbums(syncResult.getAlbums());
+                    mEntityCache.putSongs(syncResult.getSongs());
+                    storeLocally(syncResult);
+                    subscriber.onNext(syncResult);
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                }
+            }
+        }))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.BULK))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * the next sync will download the whole catalog
+     */
+    public void resetSync() {
+        getCatalogSync().reset();
+    }
+
+    /**
+     * ping the server to stay logged in.
+     * every request extends the session, so no ping is sent while other requests are being made
+     * and the previous ping response is returned instead
      */
     public Observable<PingResponse> ping() {
-        return Observable.create(new OnSubscribe<PingResponse>() {
+        return retrying(RetryPolicy.SESSION, Priority.INTERACTIVE, Observable.create(new OnSubscribe<PingResponse>() {
 
             @Override
             public void call(final Subscriber<? super PingResponse> subscriber) {
                 try {
-                    PingResponse pingResponse = getRawRequest().ping(AmpacheSession.INSTANCE.getHandshakeResponse().getAuth());
-                    HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
-                    handshakeResponse.setSession_expire(pingResponse.getSession_expire());
-                    AmpacheSession.INSTANCE.setHandshakeResponse(handshakeResponse);
+                    // the requests made since the last ping already kept the session alive
+                    PingResponse pingResponse = mSessionManager.getRecentPing();
+                    if (pingResponse == null) {
+                        pingResponse = getRawRequest().ping(getAuth());
+                        if (pingResponse.getError() != null) throw new AmpacheApiException(pingResponse.getError());
+                        HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
+                        handshakeResponse.setSession_expire(pingResponse.getSession_expire());
+                        AmpacheSession.INSTANCE.setHandshakeResponse(handshakeResponse);
+                        mSessionManager.onPing(pingResponse);
+                    }
                     subscriber.onNext(pingResponse);
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
                 }
             }
-        })
-                .doOnError(doOnError)
-                .retry(22)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        }).doOnError(doOnError))
+                .subscribeOn(mSchedulerPolicy.getScheduler(Priority.INTERACTIVE))
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * set the memory budget of the cache used by getSong, getAlbumFromId and getArtistFromId
+     * @param maxSizeBytes  estimated size in bytes of the cached songs, albums and artists
+     */
+    public void setEntityCacheSize(final int maxSizeBytes) {
+        mEntityCache.setMaxSize(maxSizeBytes);
     }
 
     public void resetCredentials() {
+        // the sync point belongs to the user that is logging out
+        resetSync();
         AmpacheSession.INSTANCE.setAmpachePassword(null);
         AmpacheSession.INSTANCE.setAmpacheUrl(null);
         AmpacheSession.INSTANCE.setAmpacheUser(null);
+        mSessionManager.reset();
+        mEntityCache.clear();
+        clearSearchIndex();
+        mTypeaheadCache.clear();
+        ModelInterner.clear();
+        if (mPersistentCache != null) {
+            mPersistentCache.clear();
+        }
+        synchronized (this) {
+            if (mCatalog != null) {
+                mCatalog.clear();
+                mCatalog.close();
+                mCatalog = null;
+            }
+        }
     }
 
+    /**
+     * retry the request according to the policy, going through the circuit breaker of the current server.
+     * the http calls of every attempt are cancelled when the subscriber unsubscribes
+     */
+    private <T> Observable<T> retrying(final RetryPolicy retryPolicy, final Priority priority, final Observable<T> request) {
+        return retryPolicy.apply(CallScope.bind(request), CircuitBreaker.forServer(AmpacheSession.INSTANCE.getAmpacheUrl()),
+                mSchedulerPolicy.getScheduler(priority));
+    }
+
+    /**
+     * the stream parses on its own bulk worker, no subscribeOn that would deliver the requests of the subscriber
+     * to the worker waiting for them
+     */
+    private <T> Observable<T> streaming(final StreamingOnSubscribe<T> onSubscribe) {
+        return CallScope.bind(Observable.create(onSubscribe))
+                .doOnError(doOnError)
+                .observeOn(mSchedulerPolicy.getDeliveryScheduler());
+    }
+
+    /**
+     * put the parsed elements in the entity cache before passing them on
+     */
+    private <T> ElementListener<T> caching(final ElementListener<T> listener) {
+        return new ElementListener<T>() {
+            @Override
+            public void onElement(final T element) throws Exception {
+                if (element instanceof Song) {
+                    mEntityCache.putSong((Song) element);
+                } else if (element instanceof Album) {
+                    mEntityCache.putAlbum((Album) element);
+                } else if (element instanceof Artist) {
+                    mEntityCache.putArtist((Artist) element);
+                }
+                listener.onElement(element);
+            }
+        };
+    }
+
+    /**
+     * the auth token of the current session, renewed first if the session is about to expire
+     */
+    private String getAuth() throws Exception {
+        return mSessionManager.getAuth(getRawRequest());
+    }
+
+    /**
+     * renew the session when a request fails because it expired, the request is then retried
+     */
     Action1<Throwable> doOnError = new Action1<Throwable>() {
 
         @Override
         public void call(final Throwable throwable) {
+            if (RetryPolicy.classify(throwable) != RetryPolicy.ErrorKind.AUTH) return;
             try {
-                if ((throwable instanceof AmpacheApiException)) {
-                    int code = Integer.parseInt(((AmpacheApiException) throwable).getAmpacheError().getCode());
-                    if (code >= 400) {
-                        getRawRequest().handshake();
-                    }
-                }
-            }catch (Exception e){
-                try {
-                    getRawRequest().handshake();
-                } catch (Exception e1) {
-                    e1.printStackTrace();
-                }
+                mSessionManager.onAuthFailure(getRawRequest());
+            } catch (Exception e) {
+                Log.error(e);
             }
         }
     };
@@ -19,17 +19,23 @@ public enum AmpacheSession {
     private static final String FILENAME_USER = "com.antoniotari.ampache.library.user";
     private static final String FILENAME_URL = "com.antoniotari.ampache.library.url";
     private static final String FILENAME_PASSWORD = "com.antoniotari.ampache.library.password";
+    private static final String FILENAME_FORMAT = "com.antoniotari.ampache.library.format";
 
     private SharedPreferences mSharedPreferences;
     private HandshakeResponse mHandshakeResponse;
     private String mAmpacheUrl;
     private String mAmpacheUser;
     private String mAmpachePassword;
+    private ResponseFormat mResponseFormat;
 
     void init(Context context) {
         mSharedPreferences = context.getSharedPreferences(KEY_SHARED_PREFERENCES, Context.MODE_PRIVATE);
     }
 
+    SharedPreferences getSharedPreferences() {
+        return mSharedPreferences;
+    }
+
     public boolean isUserAuthenticated() {
         return (getHandshakeResponse() != null && getAmpachePassword() != null && getAmpacheUrl() != null && getAmpacheUser() != null);
     }
@@ -73,6 +79,23 @@ public enum AmpacheSession {
         return mAmpacheUser;
     }
 
+    void setResponseFormat(final ResponseFormat responseFormat) {
+        mResponseFormat = responseFormat;
+        mSharedPreferences.edit()
+                .putString(FILENAME_FORMAT, responseFormat.name()).apply();
+    }
+
+    public ResponseFormat getResponseFormat() {
+        if (mResponseFormat == null) {
+            try {
+                mResponseFormat = ResponseFormat.valueOf(mSharedPreferences.getString(FILENAME_FORMAT, ResponseFormat.XML.name()));
+            } catch (IllegalArgumentException e) {
+                mResponseFormat = ResponseFormat.XML;
+            }
+        }
+        return mResponseFormat;
+    }
+
     void setHandshakeResponse(final HandshakeResponse handshakeResponse) {
         mHandshakeResponse = handshakeResponse;
         writeHandshakeResponseToFile(handshakeResponse);
@@ -0,0 +1,115 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import okhttp3.Call;
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * the http calls made on behalf of a subscriber.
+ * the requests are synchronous, so the scope of the subscriber is bound to the thread making them
+ * and RawRequest registers every call in the scope of the current thread.
+ * when the subscriber unsubscribes all its calls are cancelled, which aborts the download and the
+ * parsing of the response
+ */
+class CallScope {
+
+    private static final ThreadLocal<CallScope> sCurrent = new ThreadLocal<>();
+
+    private final Set<Call> mCalls = new HashSet<>();
+    private boolean mCancelled;
+
+    /**
+     * the calls made while subscribing to the request are cancelled when the subscriber unsubscribes
+     */
+    static <T> Observable<T> bind(final Observable<T> request) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                final CallScope scope = new CallScope();
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        scope.cancel();
+                    }
+                }));
+                CallScope previous = attach(scope);
+                try {
+                    request.unsafeSubscribe(subscriber);
+                } finally {
+                    attach(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the scope of the current thread, null if the calls made on this thread can't be cancelled
+     */
+    static CallScope current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * bind a scope to the current thread, used to carry the scope to the threads of an executor
+     * @return the scope that was bound before, to restore it once done
+     */
+    static CallScope attach(final CallScope scope) {
+        CallScope previous = sCurrent.get();
+        if (scope == null) {
+            sCurrent.remove();
+        } else {
+            sCurrent.set(scope);
+        }
+        return previous;
+    }
+
+    /**
+     * throw if the subscriber of the current thread unsubscribed
+     */
+    static void throwIfCancelled() throws InterruptedIOException {
+        CallScope scope = sCurrent.get();
+        if (scope != null && scope.isCancelled()) {
+            throw new InterruptedIOException("unsubscribed");
+        }
+    }
+
+    /**
+     * register a call, cancels it right away if the subscriber already unsubscribed
+     */
+    void add(final Call call) {
+        boolean cancelled;
+        synchronized (this) {
+            cancelled = mCancelled;
+            if (!cancelled) {
+                mCalls.add(call);
+            }
+        }
+        if (cancelled) {
+            call.cancel();
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    void cancel() {
+        Set<Call> calls;
+        synchronized (this) {
+            if (mCancelled) return;
+            mCancelled = true;
+            calls = new HashSet<>(mCalls);
+            mCalls.clear();
+        }
+        for (Call call : calls) {
+            call.cancel();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.antoniotari.reactiveampache.api;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.api.RawRequest.ChangeFilter;
+import com.antoniotari.reactiveampache.models.Album;
+import com.antoniotari.reactiveampache.models.AlbumsResponse;
+import com.antoniotari.reactiveampache.models.Artist;
+import com.antoniotari.reactiveampache.models.ArtistsResponse;
+import com.antoniotari.reactiveampache.models.BaseResponse;
+import com.antoniotari.reactiveampache.models.HandshakeResponse;
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.SongsResponse;
+import com.antoniotari.reactiveampache.models.SyncResult;
+import com.antoniotari.reactiveampache.utils.MD5;
+
+/**
+ * incremental catalog sync based on the add, update and clean dates of the handshake.
+ * the dates of the last successful sync are stored, the next sync only asks the server for the
+ * items added or updated after them. when the clean date moves items may have been removed
+ * from the catalog, in that case the whole catalog is downloaded again.
+ * every server and user has its own sync point
+ */
+class CatalogSync {
+
+    private static final String KEY_SYNC_ADD = "com.antoniotari.ampache.library.sync.add";
+    private static final String KEY_SYNC_UPDATE = "com.antoniotari.ampache.library.sync.update";
+    private static final String KEY_SYNC_CLEAN = "com.antoniotari.ampache.library.sync.clean";
+
+    private final SharedPreferences mSharedPreferences;
+
+    CatalogSync(final SharedPreferences sharedPreferences) {
+        mSharedPreferences = sharedPreferences;
+    }
+
+    /**
+     * @param rawRequest        used for the requests
+     * @param handshakeResponse a fresh handshake, its dates are the sync point of this sync
+     */
+    SyncResult sync(final RawRequest rawRequest, final HandshakeResponse handshakeResponse) throws Exception {
+        final String auth = handshakeResponse.getAuth();
+        final String owner = getOwner();
+        final String lastAdd = mSharedPreferences.getString(KEY_SYNC_ADD + owner, null);
+        final String lastUpdate = mSharedPreferences.getString(KEY_SYNC_UPDATE + owner, null);
+        final String lastClean = mSharedPreferences.getString(KEY_SYNC_CLEAN + owner, null);
+
+        SyncResult syncResult;
+        if (lastAdd == null || lastUpdate == null || !equals(lastClean, handshakeResponse.getClean())) {
+            syncResult = new SyncResult(true,
+                    nonNull(check(rawRequest.getArtists(auth)).getArtists()),
+                    nonNull(check(rawRequest.getAlbums(auth)).getAlbums()),
+                    nonNull(check(rawRequest.getSongs(auth)).getSongs()));
+        } else {
+            final boolean added = !equals(lastAdd, handshakeResponse.getAdd());
+            final boolean updated = !equals(lastUpdate, handshakeResponse.getUpdate());
+
+            List<Artist> artists = new ArrayList<>();
+            List<Album> albums = new ArrayList<>();
+            List<Song> songs = new ArrayList<>();
+            if (added) {
+                artists.addAll(nonNull(check(rawRequest.getArtistsChanged(auth, ChangeFilter.ADD, lastAdd)).getArtists()));
+                albums.addAll(nonNull(check(rawRequest.getAlbumsChanged(auth, ChangeFilter.ADD, lastAdd)).getAlbums()));
+                songs.addAll(nonNull(check(rawRequest.getSongsChanged(auth, ChangeFilter.ADD, lastAdd)).getSongs()));
+            }
+            if (updated) {
+                artists.addAll(nonNull(check(rawRequest.getArtistsChanged(auth, ChangeFilter.UPDATE, lastUpdate)).getArtists()));
+                albums.addAll(nonNull(check(rawRequest.getAlbumsChanged(auth, ChangeFilter.UPDATE, lastUpdate)).getAlbums()));
+                songs.addAll(nonNull(check(rawRequest.getSongsChanged(auth, ChangeFilter.UPDATE, lastUpdate)).getSongs()));
+            }
+            syncResult = new SyncResult(false, distinctArtists(artists), distinctAlbums(albums), distinctSongs(songs));
+        }
+
+        // store the sync point only once everything has been received
+        mSharedPreferences.edit()
+                .putString(KEY_SYNC_ADD + owner, handshakeResponse.getAdd())
+                .putString(KEY_SYNC_UPDATE + owner, handshakeResponse.getUpdate())
+                .putString(KEY_SYNC_CLEAN + owner, handshakeResponse.getClean())
+                .apply();
+        return syncResult;
+    }
+
+    /**
+     * forget the last sync point of the current server and user, the next sync will be a full sync
+     */
+    void reset() {
+        final String owner = getOwner();
+        mSharedPreferences.edit()
+                .remove(KEY_SYNC_ADD + owner)
+                .remove(KEY_SYNC_UPDATE + owner)
+                .remove(KEY_SYNC_CLEAN + owner)
+                .apply();
+    }
+
+    private static String getOwner() {
+        return "." + MD5.md5(AmpacheSession.INSTANCE.getAmpacheUrl() + "|" + AmpacheSession.INSTANCE.getAmpacheUser());
+    }
+
+    private static <T extends BaseResponse> T check(final T response) throws AmpacheApiException {
+        if (response.getError() != null) throw new AmpacheApiException(response.getError());
+        return response;
+    }
+
+    private static <T> List<T> nonNull(final List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+
+    private static boolean equals(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // an item can be both added and updated since the last sync, keep the last one received
+
+    private static List<Artist> distinctArtists(final List<Artist> artists) {
+        Map<String, Artist> map = new LinkedHashMap<>();
+        for (Artist artist : artists) {
+            map.put(artist.getId(), artist);
+        }
+        return new ArrayList<>(map.values());
+    }
+
+    private static List<Album> distinctAlbums(final List<Album> albums) {
+        Map<String, Album> map = new LinkedHashMap<>();
+        for (Album album : albums) {
+            map.put(album.getId(), album);
+        }
+        return new ArrayList<>(map.values());
+    }
+
+    private static List<Song> distinctSongs(final List<Song> songs) {
+        Map<String, Song> map = new LinkedHashMap<>();
+        for (Song song : songs) {
+            map.put(song.getId(), song);
+        }
+        return new ArrayList<>(map.values());
+    }
+}
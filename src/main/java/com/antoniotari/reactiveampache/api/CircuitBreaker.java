@@ -0,0 +1,102 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * one circuit breaker for every ampache server.
+ * after FAILURE_THRESHOLD consecutive failures the circuit opens and the requests fail fast,
+ * once OPEN_MILLIS have passed a single trial request is let through, if it succeeds the circuit
+ * closes again otherwise it stays open for another OPEN_MILLIS
+ */
+class CircuitBreaker {
+
+    // results of acquire
+    static final int DENIED = 0;
+    static final int ALLOWED = 1;
+    static final int TRIAL = 2;
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MILLIS = 30 * 1000;
+
+    private static final Map<String, CircuitBreaker> sBreakers = new HashMap<>();
+
+    private final String mServer;
+    private final long mOpenMillis;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+    private boolean mTrialInFlight;
+
+    private CircuitBreaker(final String server) {
+        this(server, OPEN_MILLIS);
+    }
+
+    /**
+     * @param openMillis    how long the circuit stays open before the trial request, for the tests
+     */
+    CircuitBreaker(final String server, final long openMillis) {
+        mServer = server;
+        mOpenMillis = openMillis;
+    }
+
+    static synchronized CircuitBreaker forServer(final String server) {
+        String key = server == null ? "" : server;
+        CircuitBreaker circuitBreaker = sBreakers.get(key);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker(key);
+            sBreakers.put(key, circuitBreaker);
+        }
+        return circuitBreaker;
+    }
+
+    String getServer() {
+        return mServer;
+    }
+
+    /**
+     * @return DENIED if the request must not be sent, TRIAL if it's the single request let through
+     * an open circuit, then it must end with onSuccess, onFailure or releaseTrial
+     */
+    synchronized int acquire() {
+        if (mOpenedAt == 0) {
+            return ALLOWED;
+        }
+        if (!mTrialInFlight && System.currentTimeMillis() - mOpenedAt >= mOpenMillis) {
+            mTrialInFlight = true;
+            return TRIAL;
+        }
+        return DENIED;
+    }
+
+    /**
+     * the trial request was cancelled before the server answered, it counts neither as a success
+     * nor as a failure and the next request can be the trial
+     */
+    synchronized void releaseTrial() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * the server answered, even with an error that is not its fault
+     */
+    synchronized void onSuccess() {
+        mConsecutiveFailures = 0;
+        mOpenedAt = 0;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * the server could not be reached or failed on its side
+     */
+    synchronized void onFailure() {
+        mTrialInFlight = false;
+        mConsecutiveFailures++;
+        if (mConsecutiveFailures >= FAILURE_THRESHOLD) {
+            mOpenedAt = System.currentTimeMillis();
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return mOpenedAt != 0;
+    }
+}
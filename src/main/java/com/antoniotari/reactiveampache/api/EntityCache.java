@@ -0,0 +1,166 @@
+package com.antoniotari.reactiveampache.api;
+
+import android.content.ComponentCallbacks2;
+import android.util.LruCache;
+
+import java.util.List;
+
+import com.antoniotari.reactiveampache.models.Album;
+import com.antoniotari.reactiveampache.models.Artist;
+import com.antoniotari.reactiveampache.models.InfoTag;
+import com.antoniotari.reactiveampache.models.LazyModel;
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.Tag;
+
+/**
+ * in memory cache of songs, albums and artists by id, filled with every response.
+ * the least recently used entities are evicted when the estimated size of the cached
+ * entities goes over the budget
+ */
+class EntityCache {
+
+    private static final String PREFIX_SONG = "song:";
+    private static final String PREFIX_ALBUM = "album:";
+    private static final String PREFIX_ARTIST = "artist:";
+
+    // rough size of an object header plus the reference fields of a model
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+
+    private final LruCache<String, Object> mCache;
+    private int mMaxSize;
+
+    EntityCache(final int maxSizeBytes) {
+        mMaxSize = maxSizeBytes;
+        mCache = new LruCache<String, Object>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(final String key, final Object value) {
+                return sizeOfString(key) + estimateSize(value);
+            }
+        };
+    }
+
+    void setMaxSize(final int maxSizeBytes) {
+        mMaxSize = maxSizeBytes;
+        mCache.resize(maxSizeBytes);
+    }
+
+    /**
+     * shrink the cache when the system is running low on memory
+     * @param level the level passed to ComponentCallbacks2.onTrimMemory
+     */
+    void onTrimMemory(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mCache.trimToSize(mMaxSize / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mCache.trimToSize(mMaxSize / 2);
+        }
+    }
+
+    void clear() {
+        mCache.evictAll();
+    }
+
+    Song getSong(final String id) {
+        return id == null ? null : (Song) mCache.get(PREFIX_SONG + id);
+    }
+
+    Album getAlbum(final String id) {
+        return id == null ? null : (Album) mCache.get(PREFIX_ALBUM + id);
+    }
+
+    Artist getArtist(final String id) {
+        return id == null ? null : (Artist) mCache.get(PREFIX_ARTIST + id);
+    }
+
+    void putSong(final Song song) {
+        if (song != null && song.getId() != null) {
+            mCache.put(PREFIX_SONG + song.getId(), song);
+        }
+    }
+
+    void putAlbum(final Album album) {
+        if (album != null && album.getId() != null) {
+            mCache.put(PREFIX_ALBUM + album.getId(), album);
+        }
+    }
+
+    void putArtist(final Artist artist) {
+        if (artist != null && artist.getId() != null) {
+            mCache.put(PREFIX_ARTIST + artist.getId(), artist);
+        }
+    }
+
+    void putSongs(final List<Song> songs) {
+        if (songs == null) return;
+        for (Song song : songs) {
+            putSong(song);
+        }
+    }
+
+    void putAlbums(final List<Album> albums) {
+        if (albums == null) return;
+        for (Album album : albums) {
+            putAlbum(album);
+        }
+    }
+
+    void putArtists(final List<Artist> artists) {
+        if (artists == null) return;
+        for (Artist artist : artists) {
+            putArtist(artist);
+        }
+    }
+
+    private static int estimateSize(final Object value) {
+        if (value instanceof Song) {
+            Song song = (Song) value;
+            int size = OBJECT_OVERHEAD + 20 * 4 +
+                    sizeOfString(song.getId()) + sizeOfString(song.getTitle()) +
+                    sizeOf(song.getArtist()) + sizeOf(song.getAlbum()) + sizeOf(song.getTag());
+            if (value instanceof LazyModel) {
+                // don't decode the lazy fields just to measure them, a decoded char takes about 2 bytes
+                return size + 2 * ((LazyModel) value).getRawSize();
+            }
+            return size +
+                    sizeOfString(song.getYear()) + sizeOfString(song.getMode()) + sizeOfString(song.getMime()) +
+                    sizeOfString(song.getUrl()) + sizeOfString(song.getMbid()) + sizeOfString(song.getAlbum_mbid()) +
+                    sizeOfString(song.getArtist_mbid()) + sizeOfString(song.getArt());
+        }
+        if (value instanceof Album) {
+            Album album = (Album) value;
+            int size = OBJECT_OVERHEAD + 10 * 4 +
+                    sizeOfString(album.getId()) + sizeOfString(album.getName()) + sizeOf(album.getArtist());
+            if (value instanceof LazyModel) {
+                return size + 2 * ((LazyModel) value).getRawSize();
+            }
+            return size + sizeOfString(album.getYear()) + sizeOfString(album.getArt());
+        }
+        if (value instanceof Artist) {
+            Artist artist = (Artist) value;
+            return OBJECT_OVERHEAD + 8 * 4 +
+                    sizeOfString(artist.getId()) + sizeOfString(artist.getName()) + sizeOf(artist.getTag());
+        }
+        return OBJECT_OVERHEAD;
+    }
+
+    private static int sizeOf(final InfoTag infoTag) {
+        if (infoTag == null) return 0;
+        return OBJECT_OVERHEAD + sizeOfString(infoTag.getId()) + sizeOfString(infoTag.getName());
+    }
+
+    private static int sizeOf(final List<Tag> tags) {
+        if (tags == null) return 0;
+        int size = OBJECT_OVERHEAD + tags.size() * 4;
+        for (Tag tag : tags) {
+            size += OBJECT_OVERHEAD + 8 + sizeOfString(tag.getTag());
+        }
+        return size;
+    }
+
+    private static int sizeOfString(final String string) {
+        return string == null ? 0 : STRING_OVERHEAD + string.length() * 2;
+    }
+}
@@ -0,0 +1,175 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.models.CatalogPage;
+
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * emits the pages of a catalog, a page is fetched only once the subscriber requested it.
+ * the pages are fetched on a worker of the request scheduler and delivered on a worker of the delivery scheduler,
+ * nothing waits for the requests so it's used without subscribeOn and observeOn, whose buffer would fetch
+ * the pages ahead of the subscriber
+ */
+abstract class PagedOnSubscribe<T> implements OnSubscribe<CatalogPage<T>> {
+
+    private final int mPageSize;
+    private final Scheduler mRequestScheduler;
+    private final Scheduler mDeliveryScheduler;
+
+    /**
+     * @param pageSize          number of items requested for each page
+     * @param requestScheduler  where the pages are fetched
+     * @param deliveryScheduler where the pages are emitted
+     */
+    PagedOnSubscribe(final int pageSize, final Scheduler requestScheduler, final Scheduler deliveryScheduler) {
+        mPageSize = pageSize;
+        mRequestScheduler = requestScheduler;
+        mDeliveryScheduler = deliveryScheduler;
+    }
+
+    /**
+     * called before the first page
+     * @return the number of items of the catalog, 0 if it's not known
+     */
+    abstract int total() throws Exception;
+
+    abstract List<T> fetch(int offset, int limit) throws Exception;
+
+    /**
+     * called once the last page has been fetched
+     */
+    abstract void onLastPage();
+
+    @Override
+    public void call(final Subscriber<? super CatalogPage<T>> subscriber) {
+        // the calls of the pages are cancelled when the subscriber unsubscribes
+        final CallScope scope = new CallScope();
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                scope.cancel();
+            }
+        }));
+        Worker requestWorker = mRequestScheduler.createWorker();
+        Worker deliveryWorker = mDeliveryScheduler.createWorker();
+        subscriber.add(requestWorker);
+        subscriber.add(deliveryWorker);
+        subscriber.setProducer(new PageProducer(subscriber, scope, requestWorker, deliveryWorker));
+    }
+
+    private class PageProducer implements Producer {
+        private final Subscriber<? super CatalogPage<T>> mSubscriber;
+        private final CallScope mScope;
+        private final Worker mRequestWorker;
+        private final Worker mDeliveryWorker;
+
+        private long mRequested;
+        // a page is being fetched or delivered
+        private boolean mBusy;
+        private boolean mStarted;
+        private int mTotal;
+        private int mOffset;
+
+        PageProducer(final Subscriber<? super CatalogPage<T>> subscriber, final CallScope scope,
+                final Worker requestWorker, final Worker deliveryWorker) {
+            mSubscriber = subscriber;
+            mScope = scope;
+            mRequestWorker = requestWorker;
+            mDeliveryWorker = deliveryWorker;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) return;
+            synchronized (this) {
+                mRequested += n;
+                // Long.MAX_VALUE means no flow control
+                if (mRequested < 0) {
+                    mRequested = Long.MAX_VALUE;
+                }
+            }
+            fetchIfRequested();
+        }
+
+        private void fetchIfRequested() {
+            synchronized (this) {
+                if (mBusy || mRequested == 0 || mSubscriber.isUnsubscribed()) return;
+                mBusy = true;
+            }
+            mRequestWorker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    fetchNext();
+                }
+            });
+        }
+
+        /**
+         * on the request worker, only one page at a time
+         */
+        private void fetchNext() {
+            CallScope previous = CallScope.attach(mScope);
+            try {
+                if (!mStarted) {
+                    mTotal = total();
+                    mStarted = true;
+                }
+                List<T> items = fetch(mOffset, mPageSize);
+                if (items == null) {
+                    items = Collections.emptyList();
+                }
+                final boolean last = items.size() < mPageSize;
+                if (last) {
+                    onLastPage();
+                }
+                // an empty page after the first one only tells that the previous page was the last
+                final CatalogPage<T> page = !items.isEmpty() || mOffset == 0 ?
+                        new CatalogPage<>(items, mOffset, mTotal, last) : null;
+                mOffset += items.size();
+                mDeliveryWorker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        deliver(page, last);
+                    }
+                });
+            } catch (final Exception e) {
+                mDeliveryWorker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        mSubscriber.onError(e);
+                    }
+                });
+            } finally {
+                CallScope.attach(previous);
+            }
+        }
+
+        private void deliver(final CatalogPage<T> page, final boolean last) {
+            if (page != null) {
+                synchronized (this) {
+                    if (mRequested != Long.MAX_VALUE) {
+                        mRequested--;
+                    }
+                }
+                mSubscriber.onNext(page);
+            }
+            if (last) {
+                mSubscriber.onCompleted();
+                return;
+            }
+            synchronized (this) {
+                mBusy = false;
+            }
+            fetchIfRequested();
+        }
+    }
+}
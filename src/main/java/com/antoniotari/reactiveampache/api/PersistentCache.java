@@ -0,0 +1,161 @@
+package com.antoniotari.reactiveampache.api;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.antoniotari.reactiveampache.models.LazyModel;
+import com.antoniotari.reactiveampache.utils.Log;
+import com.antoniotari.reactiveampache.utils.MD5;
+import com.google.gson.Gson;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+/**
+ * stale while revalidate cache of list responses stored as json files.
+ * the stored list is emitted right away, then the list is requested to the server and emitted
+ * again only if it's different from the stored one.
+ * the file names are built from the ampache url and user, never from the auth token,
+ * so a new handshake doesn't invalidate the cache
+ */
+class PersistentCache {
+
+    private final Context mContext;
+    private final Gson mGson = new Gson();
+
+    PersistentCache(final Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @param fileName  base name of the cache file
+     * @param type      type of the list, used by gson
+     * @param network   gets the fresh list from the server
+     */
+    <T> Observable<List<T>> staleWhileRevalidate(final String fileName, final Type type, final Callable<List<T>> network) {
+        return Observable.create(new OnSubscribe<List<T>>() {
+
+            @Override
+            public void call(final Subscriber<? super List<T>> subscriber) {
+                try {
+                    final File file = getFile(fileName);
+                    CacheEntry<T> cached = read(file, type);
+                    if (cached != null) {
+                        subscriber.onNext(cached.list);
+                    }
+
+                    List<T> fresh = network.call();
+                    if (subscriber.isUnsubscribed()) return;
+                    if (write(file, type, fresh, cached == null ? null : cached.digest) || cached == null) {
+                        subscriber.onNext(fresh);
+                    }
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                }
+            }
+        });
+    }
+
+    void clear() {
+        File[] files = mContext.getFilesDir().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith(AmpacheSession.KEY_SHARED_PREFERENCES + ".response.")) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(final String fileName) {
+        // one cache per server and user
+        String owner = MD5.md5(AmpacheSession.INSTANCE.getAmpacheUrl() + "|" + AmpacheSession.INSTANCE.getAmpacheUser());
+        return new File(mContext.getFilesDir(), fileName + "." + owner);
+    }
+
+    private <T> CacheEntry<T> read(final File file, final Type type) {
+        if (!file.exists()) return null;
+        try (DigestInputStream inputStream = new DigestInputStream(new FileInputStream(file), newDigest())) {
+            List<T> list = mGson.fromJson(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")), type);
+            drain(inputStream);
+            return list == null ? null : new CacheEntry<>(list, inputStream.getMessageDigest().digest());
+        } catch (Exception e) {
+            Log.error(e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * write the list to the cache file unless it has the same content as the cached one
+     * @return true if the content changed
+     */
+    private <T> boolean write(final File file, final Type type, final List<T> list, final byte[] previousDigest) throws IOException {
+        for (T element : list) {
+            // gson reads the fields, not the getters
+            if (element instanceof LazyModel) {
+                ((LazyModel) element).materialize();
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        byte[] digest;
+        try (DigestOutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), newDigest())) {
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            mGson.toJson(list, type, writer);
+            writer.flush();
+            digest = outputStream.getMessageDigest().digest();
+        }
+        if (previousDigest != null && Arrays.equals(previousDigest, digest)) {
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+        return true;
+    }
+
+    private static void drain(final InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (inputStream.read(buffer) != -1) {
+            // only the digest needs the rest of the stream
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class CacheEntry<T> {
+        final List<T> list;
+        final byte[] digest;
+
+        CacheEntry(final List<T> list, final byte[] digest) {
+            this.list = list;
+            this.digest = digest;
+        }
+    }
+}
@@ -4,25 +4,57 @@ import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.StringDef;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.security.DigestInputStream;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import com.antoniotari.reactiveampache.Exceptions.HttpStatusException;
+import com.antoniotari.reactiveampache.Exceptions.ResponseParseException;
+import com.antoniotari.reactiveampache.models.Album;
 import com.antoniotari.reactiveampache.models.AlbumsResponse;
+import com.antoniotari.reactiveampache.models.Artist;
 import com.antoniotari.reactiveampache.models.ArtistsResponse;
+import com.antoniotari.reactiveampache.models.BaseResponse;
 import com.antoniotari.reactiveampache.models.HandshakeResponse;
+import com.antoniotari.reactiveampache.models.JsonElementReader;
+import com.antoniotari.reactiveampache.models.JsonElementReaders;
+import com.antoniotari.reactiveampache.models.LazyAlbum;
+import com.antoniotari.reactiveampache.models.LazySong;
 import com.antoniotari.reactiveampache.models.PingResponse;
 import com.antoniotari.reactiveampache.models.PlaylistsResponse;
 import com.antoniotari.reactiveampache.models.RateResponse;
+import com.antoniotari.reactiveampache.models.Song;
 import com.antoniotari.reactiveampache.models.SongsResponse;
 import com.antoniotari.reactiveampache.models.TagsResponse;
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+import com.antoniotari.reactiveampache.models.XmlElementReaders;
 import com.antoniotari.reactiveampache.utils.AmpacheUtils;
+import com.antoniotari.reactiveampache.utils.ChunkedXmlParser;
+import com.antoniotari.reactiveampache.utils.JsonStreamParser;
+import com.antoniotari.reactiveampache.utils.Log;
 import com.antoniotari.reactiveampache.utils.SerializeUtils;
+import com.antoniotari.reactiveampache.utils.TolerantXmlParser;
+import com.antoniotari.reactiveampache.utils.TolerantXmlParser.ParseErrorListener;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+import com.google.gson.stream.MalformedJsonException;
+
+import org.xmlpull.v1.XmlPullParserException;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
@@ -30,10 +62,16 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.OkHttpClient.Builder;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.BufferedSource;
 
 /**
  * Created by antonio.tari on 5/12/16.
@@ -43,7 +81,20 @@ public class RawRequest {
     private final String mAmpacheUrl;
     private final String mAmpacheUser;
     private final String mAmpachePassword;
-    private static final String API_ENDPOINT = "server/xml.server.php?";
+    private static final String API_ENDPOINT = ResponseFormat.XML.getEndpoint();
+    private volatile ResponseFormat mResponseFormat = ResponseFormat.XML;
+    private volatile int mParseChunks = 1;
+    private volatile boolean mLazyModels;
+    private final ResponseMemo mResponseMemo = new ResponseMemo();
+    private volatile ParseErrorListener mParseErrorListener;
+    private volatile ExecutorService mParseExecutor = ChunkedXmlParser.getDefaultExecutor();
+
+    // connection pool and dispatcher shared by every client of every RawRequest,
+    // so a connection opened by the handshake is reused by the following calls
+    private static ConnectionPool sConnectionPool = new ConnectionPool(5, 5, TimeUnit.MINUTES);
+    private static int sMaxIdleConnections = 5;
+    private static long sKeepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+    private static final Dispatcher sDispatcher = new Dispatcher();
 
     private final OkHttpClient clientLongTimeout;
     private final OkHttpClient clientMediumTimeout;
@@ -64,37 +115,161 @@ public class RawRequest {
         String PRIVATE = "private";
     }
 
+    @StringDef ({ChangeFilter.ADD, ChangeFilter.UPDATE})
+    @Retention (RetentionPolicy.SOURCE)
+    @interface ChangeFilter {
+        String ADD = "add";
+        String UPDATE = "update";
+    }
+
 
     public RawRequest(@NonNull final String ampacheUrl,@NonNull String ampacheUser,@NonNull String ampachePassword){
         mAmpachePassword = ampachePassword;
         mAmpacheUrl = ampacheUrl;
         mAmpacheUser = ampacheUser;
 
-        Builder bLong = new Builder()
+        // one root client with the tls setup, the clients for the different timeouts are derived from it
+        // and share its connection pool, dispatcher and ssl socket factory
+        Builder rootBuilder = new Builder()
+                .connectionPool(getConnectionPool())
+                .dispatcher(sDispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        addUntrusted(rootBuilder, ampacheUrl);
+        OkHttpClient rootClient = rootBuilder.build();
+
+        clientLongTimeout = rootClient.newBuilder()
                 .readTimeout(99, TimeUnit.SECONDS)
                 .writeTimeout(99, TimeUnit.SECONDS)
-                .connectTimeout(99, TimeUnit.SECONDS);
-        addUntrusted(bLong, ampacheUrl);
-        clientLongTimeout = bLong.build();
+                .connectTimeout(99, TimeUnit.SECONDS)
+                .build();
 
-        Builder bMedium = new Builder()
+        clientMediumTimeout = rootClient.newBuilder()
                 .readTimeout(44, TimeUnit.SECONDS)
                 .writeTimeout(44, TimeUnit.SECONDS)
-                .connectTimeout(44, TimeUnit.SECONDS);
-        addUntrusted(bMedium, ampacheUrl);
-        clientMediumTimeout = bMedium.build();
+                .connectTimeout(44, TimeUnit.SECONDS)
+                .build();
 
-        Builder bShort = new Builder()
+        clientShortTimeout = rootClient.newBuilder()
                 .readTimeout(11, TimeUnit.SECONDS)
                 .writeTimeout(11, TimeUnit.SECONDS)
-                .connectTimeout(11, TimeUnit.SECONDS);
-        addUntrusted(bShort, ampacheUrl);
-        clientShortTimeout = bShort.build();
+                .connectTimeout(11, TimeUnit.SECONDS)
+                .build();
     }
 
-    public String getRequest(final String query, @Timeout int timeout) throws IOException {
+    /**
+     * configure the connection pool shared by all the requests, only affects the RawRequest created after this call.
+     * the requests are executed synchronously on the threads of the scheduler policy, so the number of requests
+     * made at the same time is bounded by its pools and not by the dispatcher
+     * @param maxIdleConnections    max number of idle connections kept in the pool
+     * @param keepAliveDuration     how long an idle connection is kept alive
+     * @return false if the pool already had this configuration and was kept
+     */
+    static synchronized boolean configureConnectionPool(final int maxIdleConnections, final long keepAliveDuration,
+            final TimeUnit timeUnit) {
+        long keepAliveMillis = timeUnit.toMillis(keepAliveDuration);
+        if (maxIdleConnections == sMaxIdleConnections && keepAliveMillis == sKeepAliveMillis) {
+            return false;
+        }
+        // the idle connections of the old pool would never be used again
+        sConnectionPool.evictAll();
+        sConnectionPool = new ConnectionPool(maxIdleConnections, keepAliveDuration, timeUnit);
+        sMaxIdleConnections = maxIdleConnections;
+        sKeepAliveMillis = keepAliveMillis;
+        return true;
+    }
+
+    private static synchronized ConnectionPool getConnectionPool() {
+        return sConnectionPool;
+    }
+
+    /**
+     * open a connection to the server in background so that the first real request
+     * doesn't have to wait for the tcp and tls setup
+     */
+    public void prewarm() {
         Request request = new Request.Builder()
-                .url(mAmpacheUrl + API_ENDPOINT + query)
+                .url(mAmpacheUrl + API_ENDPOINT)
+                .head()
+                .build();
+        clientShortTimeout.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull final Call call, @NonNull final IOException e) {
+            }
+
+            @Override
+            public void onResponse(@NonNull final Call call, @NonNull final Response response) {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * format of the list responses, the session must be opened after changing it
+     * since the json api needs a newer api version
+     */
+    public void setResponseFormat(@NonNull final ResponseFormat responseFormat) {
+        mResponseFormat = responseFormat;
+        mResponseMemo.clear();
+    }
+
+    public ResponseFormat getResponseFormat() {
+        return mResponseFormat;
+    }
+
+    /**
+     * parse the big xml lists of songs, albums and artists in this many chunks at the same time,
+     * 1 parses them on the requesting thread while they are downloaded
+     */
+    public void setParseChunks(final int parseChunks) {
+        mParseChunks = Math.max(parseChunks, 1);
+    }
+
+    /**
+     * read the xml lists of songs and albums into lazy models, the strings the lists don't usually show
+     * are decoded from the bytes of the element only when their getter is called
+     */
+    public void setLazyModels(final boolean lazyModels) {
+        mLazyModels = lazyModels;
+        mResponseMemo.clear();
+    }
+
+    /**
+     * remember the parsed lists of the last queries with the hash of their body, when a query returns
+     * the same body again the list is not parsed and the same objects are returned.
+     * the body is downloaded before it's parsed
+     * @param maxEntries    number of queries remembered, 0 to parse every response while it's downloaded
+     */
+    public void setResponseMemoSize(final int maxEntries) {
+        mResponseMemo.setMaxEntries(maxEntries);
+    }
+
+    public void clearResponseMemo() {
+        mResponseMemo.clear();
+    }
+
+    /**
+     * @param parseExecutor where the chunks of the big lists are parsed
+     */
+    public void setParseExecutor(@NonNull final ExecutorService parseExecutor) {
+        mParseExecutor = parseExecutor;
+    }
+
+    /**
+     * parse again the lists that fail to parse from the bytes already downloaded, one element at a time,
+     * the elements that can't be parsed are left out and reported to the listener
+     * @param listener  called on the request thread for every element left out, null to fail the whole list
+     */
+    public void setParseErrorListener(final ParseErrorListener listener) {
+        mParseErrorListener = listener;
+    }
+
+    Response executeRequest(final String query, @Timeout int timeout) throws IOException {
+        return executeRequest(ResponseFormat.XML, query, timeout);
+    }
+
+    Response executeRequest(final ResponseFormat responseFormat, final String query, @Timeout int timeout) throws IOException {
+        Request request = new Request.Builder()
+                .url(mAmpacheUrl + responseFormat.getEndpoint() + query)
                 .build();
 
         OkHttpClient client;
@@ -112,9 +287,16 @@ public class RawRequest {
                 break;
         }
 
-        Response response = client.newCall(request).execute();
+        Call call = client.newCall(request);
+        // cancelled when the subscriber that needs the response unsubscribes
+        CallScope scope = CallScope.current();
+        if (scope != null) {
+            scope.add(call);
+        }
+        Response response = call.execute();
         if (!response.isSuccessful()) {
-            throw new IOException("Unexpected code " + response);
+            response.close();
+            throw new HttpStatusException(response.code(), response.message());
         }
 
 //        Headers responseHeaders = response.headers();
@@ -122,7 +304,312 @@ public class RawRequest {
 //            System.out.println(responseHeaders.name(i) + ": " + responseHeaders.value(i));
 //        }
 
-        return response.body().string();
+        return response;
+    }
+
+    public byte[] getRequestBytes(final String query, @Timeout int timeout) throws IOException {
+        byte[] body = executeRequest(query, timeout).body().bytes();
+        // don't parse a response nobody is waiting for
+        CallScope.throwIfCancelled();
+        return body;
+    }
+
+    public String getRequest(final String query, @Timeout int timeout) throws IOException {
+        String body = executeRequest(query, timeout).body().string();
+        // don't parse a response nobody is waiting for
+        CallScope.throwIfCancelled();
+        return body;
+    }
+
+    /**
+     * execute the request and parse the elements with the given name while the body is downloaded
+     * @return the number of elements parsed
+     */
+    public <T> int streamList(final String query, @Timeout int timeout, final String elementName,
+            final XmlElementReader<T> reader, final ElementListener<T> listener) throws Exception {
+        Response response = executeRequest(query, timeout);
+        try {
+            BufferedSource source = response.body().source();
+            // some ampache servers send 2 bytes before the actual xml
+            long start = source.indexOf((byte) '<');
+            if (start > 0) {
+                source.skip(start);
+            }
+            return XmlStreamParser.parseList(source.inputStream(), elementName, reader, listener);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * execute the request on the json api and parse the elements of the list with the given name while the body is downloaded
+     * @return the number of elements parsed
+     */
+    public <T> int streamJsonList(final String query, @Timeout int timeout, final String elementName,
+            final JsonElementReader<T> reader, final ElementListener<T> listener) throws Exception {
+        Response response = executeRequest(ResponseFormat.JSON, query, timeout);
+        try {
+            return JsonStreamParser.parseList(response.body().byteStream(), elementName, reader, listener);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * stream the list in the format of the session
+     */
+    private <T> int stream(final String query, @Timeout int timeout, final String elementName, final XmlElementReader<T> xmlReader,
+            final JsonElementReader<T> jsonReader, final ElementListener<T> listener) throws Exception {
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return streamJsonList(query, timeout, elementName, jsonReader, listener);
+        }
+        return streamList(query, timeout, elementName, xmlReader, listener);
+    }
+
+    private <T> List<T> getJsonList(final String query, @Timeout int timeout, final String elementName,
+            final JsonElementReader<T> reader) throws Exception {
+        final List<T> list = new ArrayList<>();
+        try {
+            streamJsonList(query, timeout, elementName, reader, new ElementListener<T>() {
+                @Override
+                public void onElement(final T element) {
+                    list.add(element);
+                }
+            });
+        } catch (MalformedJsonException | RuntimeException e) {
+            throw new ResponseParseException(elementName + " list", e);
+        }
+        return list;
+    }
+
+    /**
+     * parse the response while it's downloaded, without holding the whole document in a string.
+     * in tolerant mode the bytes are kept until the response is parsed, to parse it again
+     * skipping the broken elements if the parser fails
+     */
+    private <T> T getXmlResponse(final String query, @Timeout int timeout, final Class<T> responseClass) throws Exception {
+        Response response = executeRequest(query, timeout);
+        try {
+            if (mParseErrorListener == null) {
+                try {
+                    return new SerializeUtils().fromXml(response.body().charStream(), responseClass);
+                } catch (XmlPullParserException | RuntimeException e) {
+                    throw new ResponseParseException(responseClass.getSimpleName(), e);
+                }
+            }
+            RecordingInputStream inputStream = new RecordingInputStream(response.body().byteStream());
+            try {
+                return new SerializeUtils().fromXml(new InputStreamReader(inputStream, "UTF-8"), responseClass);
+            } catch (XmlPullParserException | RuntimeException e) {
+                return recover(inputStream.readAll(), responseClass, e);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * keep the bytes of every element of the downloaded list in a lazy model
+     */
+    private static List<Song> readLazySongs(final byte[] xml) throws Exception {
+        List<Song> songs = LazySong.readList(xml);
+        // no songs, parse it normally to report the error if there is one
+        return songs.isEmpty() ?
+                ChunkedXmlParser.parseList(xml, "song", XmlElementReaders.SONG, 1, ChunkedXmlParser.getDefaultExecutor()) : songs;
+    }
+
+    private static List<Album> readLazyAlbums(final byte[] xml) throws Exception {
+        List<Album> albums = LazyAlbum.readList(xml);
+        return albums.isEmpty() ?
+                ChunkedXmlParser.parseList(xml, "album", XmlElementReaders.ALBUM, 1, ChunkedXmlParser.getDefaultExecutor()) : albums;
+    }
+
+    private interface BodyParser<T> {
+        T parse(byte[] body) throws Exception;
+    }
+
+    /**
+     * parse a downloaded response, if the parser fails the same bytes are parsed again in tolerant mode
+     */
+    private <T> T parseBody(final byte[] body, final Class<T> responseClass, final BodyParser<T> parser) throws Exception {
+        try {
+            return parser.parse(body);
+        } catch (XmlPullParserException | MalformedJsonException | RuntimeException e) {
+            return recover(body, responseClass, e);
+        }
+    }
+
+    /**
+     * parse the list again one element at a time, leaving out the elements that can't be parsed.
+     * without a parse error listener, or for json, the failure is reported as a ResponseParseException
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T recover(final byte[] body, final Class<T> responseClass, final Exception failure) throws Exception {
+        ParseErrorListener listener = mParseErrorListener;
+        if (listener != null && mResponseFormat == ResponseFormat.XML) {
+            Log.error(failure);
+            if (responseClass == SongsResponse.class) {
+                return (T) new SongsResponse(TolerantXmlParser.parseList(body, "song", XmlElementReaders.SONG, listener));
+            }
+            if (responseClass == AlbumsResponse.class) {
+                return (T) new AlbumsResponse(TolerantXmlParser.parseList(body, "album", XmlElementReaders.ALBUM, listener));
+            }
+            if (responseClass == ArtistsResponse.class) {
+                return (T) new ArtistsResponse(TolerantXmlParser.parseList(body, "artist", XmlElementReaders.ARTIST, listener));
+            }
+            if (responseClass == PlaylistsResponse.class) {
+                return (T) new PlaylistsResponse(TolerantXmlParser.parseList(body, "playlist", XmlElementReaders.PLAYLIST, listener));
+            }
+            if (responseClass == TagsResponse.class) {
+                return (T) new TagsResponse(TolerantXmlParser.parseList(body, "tag", XmlElementReaders.TAG_ENTITY, listener));
+            }
+        }
+        throw new ResponseParseException(responseClass.getSimpleName(), failure);
+    }
+
+    /**
+     * download the body computing its hash, parse it only if it's not the same body
+     * the query returned the last time
+     */
+    private <T> T memoized(final String query, @Timeout int timeout, final Class<T> responseClass,
+            final BodyParser<T> parser) throws Exception {
+        final ResponseFormat responseFormat = mResponseFormat;
+        Response response = executeRequest(responseFormat, query, timeout);
+        byte[] body;
+        byte[] digest;
+        try {
+            DigestInputStream inputStream = new DigestInputStream(response.body().byteStream(), ResponseMemo.newDigest());
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            body = outputStream.toByteArray();
+            digest = inputStream.getMessageDigest().digest();
+        } finally {
+            response.close();
+        }
+        // don't parse a response nobody is waiting for
+        CallScope.throwIfCancelled();
+
+        String key = ResponseMemo.keyOf(responseFormat, query);
+        T previous = mResponseMemo.get(key, digest);
+        if (previous != null) {
+            return previous;
+        }
+        T parsed = parseBody(body, responseClass, parser);
+        if (!(parsed instanceof BaseResponse) || ((BaseResponse) parsed).getError() == null) {
+            mResponseMemo.put(key, digest, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * parse a downloaded list in the format of the session, the xml lists are parsed in chunks on the parse pool
+     */
+    private <T> List<T> parseList(final byte[] body, final String elementName, final XmlElementReader<T> xmlReader,
+            final JsonElementReader<T> jsonReader) throws Exception {
+        if (mResponseFormat == ResponseFormat.JSON) {
+            final List<T> list = new ArrayList<>();
+            JsonStreamParser.parseList(new ByteArrayInputStream(body), elementName, jsonReader, new ElementListener<T>() {
+                @Override
+                public void onElement(final T element) {
+                    list.add(element);
+                }
+            });
+            return list;
+        }
+        return ChunkedXmlParser.parseList(body, elementName, xmlReader, mParseChunks, mParseExecutor);
+    }
+
+    private SongsResponse getSongsResponse(final String query, @Timeout int timeout) throws Exception {
+        BodyParser<SongsResponse> parser = new BodyParser<SongsResponse>() {
+            @Override
+            public SongsResponse parse(final byte[] body) throws Exception {
+                return new SongsResponse(mLazyModels && mResponseFormat == ResponseFormat.XML ?
+                        readLazySongs(body) : parseList(body, "song", XmlElementReaders.SONG, JsonElementReaders.SONG));
+            }
+        };
+        if (mResponseMemo.isEnabled()) {
+            return memoized(query, timeout, SongsResponse.class, parser);
+        }
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return new SongsResponse(getJsonList(query, timeout, "song", JsonElementReaders.SONG));
+        }
+        if (mLazyModels || mParseChunks > 1) {
+            return parseBody(getRequestBytes(query, timeout), SongsResponse.class, parser);
+        }
+        return getXmlResponse(query, timeout, SongsResponse.class);
+    }
+
+    private AlbumsResponse getAlbumsResponse(final String query, @Timeout int timeout) throws Exception {
+        BodyParser<AlbumsResponse> parser = new BodyParser<AlbumsResponse>() {
+            @Override
+            public AlbumsResponse parse(final byte[] body) throws Exception {
+                return new AlbumsResponse(mLazyModels && mResponseFormat == ResponseFormat.XML ?
+                        readLazyAlbums(body) : parseList(body, "album", XmlElementReaders.ALBUM, JsonElementReaders.ALBUM));
+            }
+        };
+        if (mResponseMemo.isEnabled()) {
+            return memoized(query, timeout, AlbumsResponse.class, parser);
+        }
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return new AlbumsResponse(getJsonList(query, timeout, "album", JsonElementReaders.ALBUM));
+        }
+        if (mLazyModels || mParseChunks > 1) {
+            return parseBody(getRequestBytes(query, timeout), AlbumsResponse.class, parser);
+        }
+        return getXmlResponse(query, timeout, AlbumsResponse.class);
+    }
+
+    private ArtistsResponse getArtistsResponse(final String query, @Timeout int timeout) throws Exception {
+        BodyParser<ArtistsResponse> parser = new BodyParser<ArtistsResponse>() {
+            @Override
+            public ArtistsResponse parse(final byte[] body) throws Exception {
+                return new ArtistsResponse(parseList(body, "artist", XmlElementReaders.ARTIST, JsonElementReaders.ARTIST));
+            }
+        };
+        if (mResponseMemo.isEnabled()) {
+            return memoized(query, timeout, ArtistsResponse.class, parser);
+        }
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return new ArtistsResponse(getJsonList(query, timeout, "artist", JsonElementReaders.ARTIST));
+        }
+        if (mParseChunks > 1) {
+            return parseBody(getRequestBytes(query, timeout), ArtistsResponse.class, parser);
+        }
+        return getXmlResponse(query, timeout, ArtistsResponse.class);
+    }
+
+    private PlaylistsResponse getPlaylistsResponse(final String query, @Timeout int timeout) throws Exception {
+        if (mResponseMemo.isEnabled()) {
+            return memoized(query, timeout, PlaylistsResponse.class, new BodyParser<PlaylistsResponse>() {
+                @Override
+                public PlaylistsResponse parse(final byte[] body) throws Exception {
+                    return new PlaylistsResponse(parseList(body, "playlist", XmlElementReaders.PLAYLIST, JsonElementReaders.PLAYLIST));
+                }
+            });
+        }
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return new PlaylistsResponse(getJsonList(query, timeout, "playlist", JsonElementReaders.PLAYLIST));
+        }
+        return getXmlResponse(query, timeout, PlaylistsResponse.class);
+    }
+
+    private TagsResponse getTagsResponse(final String query, @Timeout int timeout) throws Exception {
+        if (mResponseMemo.isEnabled()) {
+            return memoized(query, timeout, TagsResponse.class, new BodyParser<TagsResponse>() {
+                @Override
+                public TagsResponse parse(final byte[] body) throws Exception {
+                    return new TagsResponse(parseList(body, "tag", XmlElementReaders.TAG_ENTITY, JsonElementReaders.TAG_ENTITY));
+                }
+            });
+        }
+        if (mResponseFormat == ResponseFormat.JSON) {
+            return new TagsResponse(getJsonList(query, timeout, "tag", JsonElementReaders.TAG_ENTITY));
+        }
+        return getXmlResponse(query, timeout, TagsResponse.class);
     }
 
     public HandshakeResponse handshake(final String user, final String password) throws Exception {
@@ -131,11 +618,10 @@ public class RawRequest {
         String passphrase = AmpacheUtils.sha256(timestamp + key);
         String handshakeQuery = "action=handshake&auth=" +
                 passphrase + "&timestamp=" +
-                timestamp + "&version=350001&user=" +
+                timestamp + "&version=" + mResponseFormat.getApiVersion() + "&user=" +
                 user;
 
-        final String respStr = getRequest(handshakeQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, HandshakeResponse.class);
+        return getXmlResponse(handshakeQuery, Timeout.SHORT_TIMEOUT, HandshakeResponse.class);
     }
 
     public HandshakeResponse handshake() throws Exception {
@@ -147,8 +633,7 @@ public class RawRequest {
                 //"&offset=252" +
                 //"&limit=100" +
                 "&action=artists";
-        final String respStr = getRequest(artistQuery, Timeout.MEDIUM_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, ArtistsResponse.class);
+        return getArtistsResponse(artistQuery, Timeout.MEDIUM_TIMEOUT);
     }
 
     public AlbumsResponse getAlbumsFromArtist(final String auth, final String artistId) throws Exception {
@@ -156,8 +641,7 @@ public class RawRequest {
                 "&filter=" + artistId +
                 //"&limit=100" +
                 "&action=artist_albums";
-        final String respStr = getRequest(artistQuery,Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, AlbumsResponse.class);
+        return getAlbumsResponse(artistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public AlbumsResponse getAlbumFromId(final String auth, final String albumId) throws Exception {
@@ -165,8 +649,7 @@ public class RawRequest {
                 "&filter=" + albumId +
                 //"&limit=100" +
                 "&action=album";
-        final String respStr = getRequest(artistQuery,Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, AlbumsResponse.class);
+        return getAlbumsResponse(artistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public ArtistsResponse getArtistFromId(final String auth, final String artistId) throws Exception {
@@ -174,8 +657,7 @@ public class RawRequest {
                 "&filter=" + artistId +
                 //"&limit=100" +
                 "&action=artist";
-        final String respStr = getRequest(artistQuery,Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, ArtistsResponse.class);
+        return getArtistsResponse(artistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public AlbumsResponse getAlbums(final String auth) throws Exception {
@@ -183,8 +665,7 @@ public class RawRequest {
                 //"&limit=100" +
                 "&action=albums";
 
-        final String respStr = getRequest(artistQuery, Timeout.LONG_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, AlbumsResponse.class);
+        return getAlbumsResponse(artistQuery, Timeout.LONG_TIMEOUT);
     }
 
     public SongsResponse getSongsFromAlbum(final String auth, final String albumId) throws Exception {
@@ -192,83 +673,157 @@ public class RawRequest {
                 "&filter=" + albumId +
                 //"&limit=100" +
                 "&action=album_songs";
-        final String respStr = getRequest(artistQuery,Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(artistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public SongsResponse getSongs(final String auth) throws Exception {
         String artistQuery = "auth=" + auth +
                 //"&limit=100" +
                 "&action=songs";
-        final String respStr = getRequest(artistQuery, Timeout.LONG_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(artistQuery, Timeout.LONG_TIMEOUT);
+    }
+
+    public ArtistsResponse getArtists(final String auth, final int offset, final int limit) throws Exception {
+        String artistQuery = "auth=" + auth +
+                "&offset=" + offset +
+                "&limit=" + limit +
+                "&action=artists";
+        return getArtistsResponse(artistQuery, Timeout.MEDIUM_TIMEOUT);
+    }
+
+    public AlbumsResponse getAlbums(final String auth, final int offset, final int limit) throws Exception {
+        String albumQuery = "auth=" + auth +
+                "&offset=" + offset +
+                "&limit=" + limit +
+                "&action=albums";
+        return getAlbumsResponse(albumQuery, Timeout.MEDIUM_TIMEOUT);
+    }
+
+    public SongsResponse getSongs(final String auth, final int offset, final int limit) throws Exception {
+        String songQuery = "auth=" + auth +
+                "&offset=" + offset +
+                "&limit=" + limit +
+                "&action=songs";
+        return getSongsResponse(songQuery, Timeout.MEDIUM_TIMEOUT);
+    }
+
+    /**
+     * get the artists added or updated after the given date
+     * @param changeFilter  add or update
+     * @param date          ISO 8601 date, e.g. the add or update date of a previous handshake
+     */
+    public ArtistsResponse getArtistsChanged(final String auth, @ChangeFilter final String changeFilter, final String date) throws Exception {
+        String artistQuery = "auth=" + auth +
+                "&" + changeFilter + "=" + encode(date) +
+                "&action=artists";
+        return getArtistsResponse(artistQuery, Timeout.LONG_TIMEOUT);
+    }
+
+    /**
+     * get the albums added or updated after the given date
+     * @param changeFilter  add or update
+     * @param date          ISO 8601 date, e.g. the add or update date of a previous handshake
+     */
+    public AlbumsResponse getAlbumsChanged(final String auth, @ChangeFilter final String changeFilter, final String date) throws Exception {
+        String albumQuery = "auth=" + auth +
+                "&" + changeFilter + "=" + encode(date) +
+                "&action=albums";
+        return getAlbumsResponse(albumQuery, Timeout.LONG_TIMEOUT);
+    }
+
+    /**
+     * get the songs added or updated after the given date
+     * @param changeFilter  add or update
+     * @param date          ISO 8601 date, e.g. the add or update date of a previous handshake
+     */
+    public SongsResponse getSongsChanged(final String auth, @ChangeFilter final String changeFilter, final String date) throws Exception {
+        String songQuery = "auth=" + auth +
+                "&" + changeFilter + "=" + encode(date) +
+                "&action=songs";
+        return getSongsResponse(songQuery, Timeout.LONG_TIMEOUT);
+    }
+
+    public int streamArtists(final String auth, final ElementListener<Artist> listener) throws Exception {
+        String artistQuery = "auth=" + auth + "&action=artists";
+        return stream(artistQuery, Timeout.MEDIUM_TIMEOUT, "artist", XmlElementReaders.ARTIST, JsonElementReaders.ARTIST, listener);
+    }
+
+    public int streamAlbums(final String auth, final ElementListener<Album> listener) throws Exception {
+        String albumQuery = "auth=" + auth + "&action=albums";
+        return stream(albumQuery, Timeout.LONG_TIMEOUT, "album", XmlElementReaders.ALBUM, JsonElementReaders.ALBUM, listener);
+    }
+
+    public int streamSongs(final String auth, final ElementListener<Song> listener) throws Exception {
+        String songQuery = "auth=" + auth + "&action=songs";
+        return stream(songQuery, Timeout.LONG_TIMEOUT, "song", XmlElementReaders.SONG, JsonElementReaders.SONG, listener);
+    }
+
+    public int streamTagSongs(final String auth, final String tagId, final ElementListener<Song> listener) throws Exception {
+        String tagQuery = "auth=" + auth + "&filter=" + tagId + "&action=tag_songs";
+        return stream(tagQuery, Timeout.MEDIUM_TIMEOUT, "song", XmlElementReaders.SONG, JsonElementReaders.SONG, listener);
+    }
+
+    public int streamPlaylistSongs(final String auth, final String playlistId, final ElementListener<Song> listener) throws Exception {
+        String playlistQuery = "auth=" + auth + "&filter=" + playlistId + "&action=playlist_songs";
+        return stream(playlistQuery, Timeout.MEDIUM_TIMEOUT, "song", XmlElementReaders.SONG, JsonElementReaders.SONG, listener);
     }
 
     public SongsResponse searchSongs(final String auth, final String filter) throws Exception {
         String artistQuery = "auth=" + auth +
                 "&filter=" + filter +
                 "&action=search_songs";
-        final String respStr = getRequest(artistQuery, Timeout.LONG_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(artistQuery, Timeout.LONG_TIMEOUT);
     }
 
     public TagsResponse getTagsX(final String auth) throws Exception {
         String playlistQuery = "auth=" + auth + "&action=tags";
-        final String respStr = getRequest(playlistQuery, Timeout.MEDIUM_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, TagsResponse.class);
+        return getTagsResponse(playlistQuery, Timeout.MEDIUM_TIMEOUT);
     }
 
     public PlaylistsResponse getPlaylists(final String auth) throws Exception {
         String playlistQuery = "auth=" + auth + "&action=playlists";
-        final String respStr = getRequest(playlistQuery, Timeout.MEDIUM_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, PlaylistsResponse.class);
+        return getPlaylistsResponse(playlistQuery, Timeout.MEDIUM_TIMEOUT);
     }
 
         public PlaylistsResponse getPlaylist(final String auth, final String playlistId) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&filter=" + playlistId +
                 "&action=playlist";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, PlaylistsResponse.class);
+        return getPlaylistsResponse(playlistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public SongsResponse getArtistSongs(final String auth, final String artistId) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&filter=" + artistId +
                 "&action=artist_songs";
-        final String respStr = getRequest(playlistQuery, Timeout.MEDIUM_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(playlistQuery, Timeout.MEDIUM_TIMEOUT);
     }
 
     public SongsResponse getPlaylistSongs(final String auth, final String playlistId) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&filter=" + playlistId +
                 "&action=playlist_songs";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(playlistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public SongsResponse getSong(final String auth, final String id) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&filter=" +id +
                 "&action=song";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(playlistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public TagsResponse getTags(final String auth) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&action=tags";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, TagsResponse.class);
+        return getTagsResponse(playlistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public SongsResponse getTagSongs(final String auth, String tagId) throws Exception {
         String playlistQuery = "auth=" + auth +
                 "&filter=" + tagId +
                 "&action=tag_songs";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getSongsResponse(playlistQuery, Timeout.SHORT_TIMEOUT);
     }
 
     public SongsResponse createPlaylist(final String auth, final String name, @PlaylistType final String type) throws Exception {
@@ -278,8 +833,7 @@ public class RawRequest {
                 "&type=" + type +
                 "&action=playlist_create";
 //        Log.blu(mAmpacheUrl+API_ENDPOINT+playlistQuery);
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getXmlResponse(playlistQuery, Timeout.SHORT_TIMEOUT, SongsResponse.class);
     }
 
     public SongsResponse deletePlaylist(final String auth, final String playlistId) throws Exception {
@@ -287,8 +841,7 @@ public class RawRequest {
         String playlistQuery = "auth=" + auth +
                 "&filter=" + playlistId +
                 "&action=playlist_delete";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getXmlResponse(playlistQuery, Timeout.SHORT_TIMEOUT, SongsResponse.class);
     }
 
     public SongsResponse playlistAddSong(final String auth, final String playlistId, final String songId) throws Exception {
@@ -297,8 +850,7 @@ public class RawRequest {
                 "&filter=" + playlistId +
                 "&song=" + songId +
                 "&action=playlist_add_song";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getXmlResponse(playlistQuery, Timeout.SHORT_TIMEOUT, SongsResponse.class);
     }
 
     public SongsResponse playlistRemoveSong(final String auth, final String playlistId, final String trackNumber) throws Exception {
@@ -307,16 +859,14 @@ public class RawRequest {
                 "&filter=" + playlistId +
                 "&track=" + trackNumber +
                 "&action=playlist_remove_song";
-        final String respStr = getRequest(playlistQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, SongsResponse.class);
+        return getXmlResponse(playlistQuery, Timeout.SHORT_TIMEOUT, SongsResponse.class);
     }
 
     public RateResponse rateSong(final String auth, final String songId, final int rating) throws Exception {
         String rateQuery = "auth=" + auth +
                 "&action=rate&type=song&id=" + songId +
                 "&rating=" + rating;
-        final String respStr = getRequest(rateQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, RateResponse.class);
+        return getXmlResponse(rateQuery, Timeout.SHORT_TIMEOUT, RateResponse.class);
     }
 
     public RateResponse addOrRemoveSongTag(final String auth, final String songId, final String tag,
@@ -324,14 +874,16 @@ public class RawRequest {
         String query = "auth=" + auth +
                 "&action=addorremovetag&type=song&id=" + songId +
                 "&tag=" + tag + "&remove="+(removeTag ? "1" : "0");
-        final String respStr = getRequest(query, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, RateResponse.class);
+        return getXmlResponse(query, Timeout.SHORT_TIMEOUT, RateResponse.class);
     }
 
     public PingResponse ping(final String auth) throws Exception {
-        String pingQuery = "auth=" + auth + "&action=ping" +"&version=350001";
-        final String respStr = getRequest(pingQuery, Timeout.SHORT_TIMEOUT);
-        return new SerializeUtils().fromXml(respStr, PingResponse.class);
+        String pingQuery = "auth=" + auth + "&action=ping" + "&version=" + mResponseFormat.getApiVersion();
+        return getXmlResponse(pingQuery, Timeout.SHORT_TIMEOUT, PingResponse.class);
+    }
+
+    private static String encode(final String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
     }
 
     private void addUntrusted(Builder clientBuilder, String url) {
@@ -0,0 +1,66 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * keeps a copy of the bytes read from the response, so the response can be parsed again
+ * without downloading it when the parser fails
+ */
+class RecordingInputStream extends FilterInputStream {
+
+    private final ByteArrayOutputStream mCopy = new ByteArrayOutputStream();
+
+    RecordingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCopy.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            mCopy.write(buffer, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(n, 8192)];
+        long total = 0;
+        while (total < n) {
+            int read = read(skipped, 0, (int) Math.min(n - total, skipped.length));
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * read the rest of the response
+     * @return all the bytes of the response
+     */
+    byte[] readAll() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // the copy keeps them
+        }
+        return mCopy.toByteArray();
+    }
+}
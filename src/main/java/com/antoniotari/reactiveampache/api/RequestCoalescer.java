@@ -0,0 +1,64 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * single flight for the read requests: while a request for an action and filter is in flight
+ * every other subscriber asking for the same action and filter joins it instead of
+ * making a new network call and parse
+ */
+class RequestCoalescer {
+
+    private final ConcurrentMap<String, Observable<?>> mInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param action    the ampache action
+     * @param filter    the filter of the request, null if the action has no filter
+     * @param request   the cold observable that makes the request
+     */
+    <T> Observable<T> coalesce(final String action, final String filter, final Observable<T> request) {
+        final String key = filter == null ? action : action + ":" + filter;
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Observable<T> call() {
+                Observable<T> inFlight = (Observable<T>) mInFlight.get(key);
+                if (inFlight != null) {
+                    return inFlight;
+                }
+
+                final InFlightRequest<T> holder = new InFlightRequest<>();
+                // the entry is removed before the result is delivered,
+                // a subscriber coming after that makes a new request instead of joining one that already emitted
+                holder.observable = request
+                        .doOnNext(new Action1<T>() {
+                            @Override
+                            public void call(final T t) {
+                                mInFlight.remove(key, holder.observable);
+                            }
+                        })
+                        .finallyDo(new Action0() {
+                            @Override
+                            public void call() {
+                                mInFlight.remove(key, holder.observable);
+                            }
+                        })
+                        .publish()
+                        .refCount();
+
+                inFlight = (Observable<T>) mInFlight.putIfAbsent(key, holder.observable);
+                return inFlight != null ? inFlight : holder.observable;
+            }
+        });
+    }
+
+    private static class InFlightRequest<T> {
+        volatile Observable<T> observable;
+    }
+}
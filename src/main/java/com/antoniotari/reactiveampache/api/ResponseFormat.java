@@ -0,0 +1,27 @@
+package com.antoniotari.reactiveampache.api;
+
+/**
+ * format of the responses of the ampache api.
+ * the json api needs a session opened with api version 4 or later, the actions that
+ * don't return lists are always requested as xml
+ */
+public enum ResponseFormat {
+    XML("server/xml.server.php?", "350001"),
+    JSON("server/json.server.php?", "400001");
+
+    private final String mEndpoint;
+    private final String mApiVersion;
+
+    ResponseFormat(final String endpoint, final String apiVersion) {
+        mEndpoint = endpoint;
+        mApiVersion = apiVersion;
+    }
+
+    String getEndpoint() {
+        return mEndpoint;
+    }
+
+    String getApiVersion() {
+        return mApiVersion;
+    }
+}
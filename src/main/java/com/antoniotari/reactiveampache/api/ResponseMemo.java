@@ -0,0 +1,122 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.antoniotari.reactiveampache.models.AlbumsResponse;
+import com.antoniotari.reactiveampache.models.ArtistsResponse;
+import com.antoniotari.reactiveampache.models.PlaylistsResponse;
+import com.antoniotari.reactiveampache.models.SongsResponse;
+import com.antoniotari.reactiveampache.models.TagsResponse;
+
+/**
+ * the last parsed response of the most recent queries with the hash of its body.
+ * when a query returns the same bytes again the previous response is reused instead of parsing them.
+ * the auth token is not part of the key, a response is reused also after the session is renewed.
+ * every caller gets its own response and list, the songs, albums and other items in the lists are shared
+ */
+class ResponseMemo {
+
+    private static final Pattern AUTH_PARAMETER = Pattern.compile("(^|&)auth=[^&]*");
+
+    private static class Entry {
+        final byte[] digest;
+        final Object response;
+
+        Entry(final byte[] digest, final Object response) {
+            this.digest = digest;
+            this.response = response;
+        }
+    }
+
+    private int mMaxEntries;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > mMaxEntries;
+        }
+    };
+
+    /**
+     * @param maxEntries    number of queries remembered, 0 disables the memo
+     */
+    synchronized void setMaxEntries(final int maxEntries) {
+        mMaxEntries = Math.max(maxEntries, 0);
+        if (mMaxEntries == 0) {
+            mEntries.clear();
+        }
+        // drop the least recently used entries over the new size
+        while (mEntries.size() > mMaxEntries) {
+            String eldest = mEntries.keySet().iterator().next();
+            mEntries.remove(eldest);
+        }
+    }
+
+    synchronized boolean isEnabled() {
+        return mMaxEntries > 0;
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    static String keyOf(final ResponseFormat responseFormat, final String query) {
+        return responseFormat.name() + ":" + AUTH_PARAMETER.matcher(query).replaceFirst("");
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a copy of the response parsed the last time the query returned a body with the same digest, null if none.
+     * the list of the copy can be changed by the caller, its items are the ones of the stored response
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(final String key, final byte[] digest) {
+        Entry entry = mEntries.get(key);
+        return entry != null && Arrays.equals(entry.digest, digest) ? (T) copy(entry.response) : null;
+    }
+
+    /**
+     * stores a copy of the response, the caller can keep changing the list of the given one
+     */
+    synchronized void put(final String key, final byte[] digest, final Object response) {
+        if (mMaxEntries > 0) {
+            mEntries.put(key, new Entry(digest, copy(response)));
+        }
+    }
+
+    private static Object copy(final Object response) {
+        if (response instanceof SongsResponse) {
+            return new SongsResponse(copy(((SongsResponse) response).getSongs()));
+        }
+        if (response instanceof AlbumsResponse) {
+            return new AlbumsResponse(copy(((AlbumsResponse) response).getAlbums()));
+        }
+        if (response instanceof ArtistsResponse) {
+            return new ArtistsResponse(copy(((ArtistsResponse) response).getArtists()));
+        }
+        if (response instanceof PlaylistsResponse) {
+            return new PlaylistsResponse(copy(((PlaylistsResponse) response).getPlaylists()));
+        }
+        if (response instanceof TagsResponse) {
+            return new TagsResponse(copy(((TagsResponse) response).getTags()));
+        }
+        return response;
+    }
+
+    private static <T> ArrayList<T> copy(final List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+}
@@ -0,0 +1,333 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.Exceptions.CircuitOpenException;
+import com.antoniotari.reactiveampache.Exceptions.HttpStatusException;
+import com.antoniotari.reactiveampache.Exceptions.ResponseParseException;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * retries a request with exponential backoff and full jitter until it succeeds, the attempts
+ * are over or the deadline of the call is reached.
+ * client errors and responses that can't be parsed are not retried, authentication errors are retried since the session gets renewed
+ * in the meantime. every attempt goes through the circuit breaker of the server
+ */
+public class RetryPolicy {
+
+    /**
+     * lists and details
+     */
+    public static final RetryPolicy DEFAULT = new Builder().build();
+
+    /**
+     * full catalog downloads, fewer attempts spaced further apart
+     */
+    public static final RetryPolicy BULK = new Builder()
+            .maxAttempts(4)
+            .baseDelay(2, TimeUnit.SECONDS)
+            .maxDelay(30, TimeUnit.SECONDS)
+            .deadline(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * user actions like rating, the user is waiting for them
+     */
+    public static final RetryPolicy INTERACTIVE = new Builder()
+            .maxAttempts(3)
+            .baseDelay(250, TimeUnit.MILLISECONDS)
+            .maxDelay(2, TimeUnit.SECONDS)
+            .deadline(30, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * handshake and ping
+     */
+    public static final RetryPolicy SESSION = new Builder()
+            .maxAttempts(6)
+            .baseDelay(1, TimeUnit.SECONDS)
+            .maxDelay(20, TimeUnit.SECONDS)
+            .deadline(2, TimeUnit.MINUTES)
+            .build();
+
+    enum ErrorKind {
+        // the session expired or the auth token is not valid anymore
+        AUTH,
+        // the request is wrong, retrying won't help
+        CLIENT,
+        // the server failed or is overloaded
+        SERVER,
+        // the server could not be reached
+        NETWORK,
+        // the circuit breaker is open
+        CIRCUIT_OPEN,
+        // the response was downloaded but could not be parsed, it would be the same the next time
+        PARSE,
+        OTHER
+    }
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final long mDeadlineMillis;
+
+    private RetryPolicy(final Builder builder) {
+        mMaxAttempts = builder.maxAttempts;
+        mBaseDelayMillis = builder.baseDelayMillis;
+        mMaxDelayMillis = builder.maxDelayMillis;
+        mDeadlineMillis = builder.deadlineMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    static ErrorKind classify(final Throwable throwable) {
+        if (throwable instanceof CircuitOpenException) {
+            return ErrorKind.CIRCUIT_OPEN;
+        }
+        if (throwable instanceof ResponseParseException) {
+            return ErrorKind.PARSE;
+        }
+        if (throwable instanceof AmpacheApiException) {
+            int code;
+            try {
+                code = Integer.parseInt(((AmpacheApiException) throwable).getAmpacheError().getCode());
+            } catch (Exception e) {
+                return ErrorKind.OTHER;
+            }
+            // 401 session expired, 4701 is the same error on api 5
+            if (code == 401 || code == 4701) return ErrorKind.AUTH;
+            if (code >= 500 && code < 600) return ErrorKind.SERVER;
+            if (code >= 400) return ErrorKind.CLIENT;
+            return ErrorKind.OTHER;
+        }
+        if (throwable instanceof HttpStatusException) {
+            int code = ((HttpStatusException) throwable).getCode();
+            if (code == 401) return ErrorKind.AUTH;
+            if (code == 408 || code == 429 || code >= 500) return ErrorKind.SERVER;
+            return ErrorKind.CLIENT;
+        }
+        if (throwable instanceof IOException) {
+            return ErrorKind.NETWORK;
+        }
+        return ErrorKind.OTHER;
+    }
+
+    boolean shouldRetry(final Throwable throwable, final int attempt) {
+        if (attempt >= mMaxAttempts) return false;
+        switch (classify(throwable)) {
+            case CLIENT:
+            case CIRCUIT_OPEN:
+            case PARSE:
+                return false;
+            case AUTH:
+                // a new session is requested on the first failure, if it doesn't work it won't work later
+                return attempt < 2;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting from 1
+     * @return the delay before the next attempt
+     */
+    long delayMillis(final int attempt) {
+        long exponential = mBaseDelayMillis << Math.min(attempt - 1, 20);
+        long cap = Math.min(mMaxDelayMillis, exponential);
+        return (long) (sRandom.nextDouble() * cap);
+    }
+
+    private static void record(final CircuitBreaker circuitBreaker, final Throwable throwable) {
+        switch (classify(throwable)) {
+            case SERVER:
+            case NETWORK:
+                circuitBreaker.onFailure();
+                break;
+            case CIRCUIT_OPEN:
+                break;
+            default:
+                // the server answered
+                circuitBreaker.onSuccess();
+                break;
+        }
+    }
+
+    private static void release(final CircuitBreaker circuitBreaker, final AtomicBoolean settled) {
+        if (settled.compareAndSet(false, true)) {
+            circuitBreaker.releaseTrial();
+        }
+    }
+
+    /**
+     * resubscribe to the request when it fails until the policy gives up
+     * @param request           cold observable making the request
+     * @param circuitBreaker    circuit breaker of the server
+     */
+    <T> Observable<T> apply(final Observable<T> request, final CircuitBreaker circuitBreaker) {
+        return apply(request, circuitBreaker, Schedulers.io());
+    }
+
+    /**
+     * @param scheduler where the attempts after the first one are made
+     */
+    <T> Observable<T> apply(final Observable<T> request, final CircuitBreaker circuitBreaker, final Scheduler scheduler) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> child) {
+                Worker worker = scheduler.createWorker();
+                child.add(worker);
+                attempt(request, child, circuitBreaker, worker, 1, System.currentTimeMillis() + mDeadlineMillis);
+            }
+        });
+    }
+
+    private <T> void attempt(final Observable<T> request, final Subscriber<? super T> child, final CircuitBreaker circuitBreaker,
+            final Worker worker, final int attempt, final long deadline) {
+        if (child.isUnsubscribed()) return;
+        final int permit = circuitBreaker.acquire();
+        if (permit == CircuitBreaker.DENIED) {
+            child.onError(new CircuitOpenException(circuitBreaker.getServer()));
+            return;
+        }
+        // set once the outcome of the trial is known, a trial cancelled before that is released
+        final AtomicBoolean settled = new AtomicBoolean(permit != CircuitBreaker.TRIAL);
+
+        Subscriber<T> subscriber = new Subscriber<T>() {
+            @Override
+            public void onNext(final T t) {
+                child.onNext(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                settled.set(true);
+                circuitBreaker.onSuccess();
+                child.onCompleted();
+            }
+
+            @Override
+            public void onError(final Throwable e) {
+                // the call was cancelled because the subscriber is gone, not a failure of the server
+                if (child.isUnsubscribed()) {
+                    release(circuitBreaker, settled);
+                    return;
+                }
+                settled.set(true);
+                record(circuitBreaker, e);
+                long delay = delayMillis(attempt);
+                if (!child.isUnsubscribed() && shouldRetry(e, attempt) && System.currentTimeMillis() + delay < deadline) {
+                    worker.schedule(new Action0() {
+                        @Override
+                        public void call() {
+                            attempt(request, child, circuitBreaker, worker, attempt + 1, deadline);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    child.onError(e);
+                }
+            }
+        };
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                release(circuitBreaker, settled);
+            }
+        }));
+        child.add(subscriber);
+        request.unsafeSubscribe(subscriber);
+    }
+
+    /**
+     * blocking version for the requests made inside an observable that already emitted something
+     * @param onError called after every failed attempt
+     */
+    <T> T call(final Callable<T> request, final CircuitBreaker circuitBreaker, final Action1<Throwable> onError) throws Exception {
+        final long deadline = System.currentTimeMillis() + mDeadlineMillis;
+        for (int attempt = 1; ; attempt++) {
+            CallScope.throwIfCancelled();
+            int permit = circuitBreaker.acquire();
+            if (permit == CircuitBreaker.DENIED) {
+                throw new CircuitOpenException(circuitBreaker.getServer());
+            }
+            try {
+                T result = request.call();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                try {
+                    CallScope.throwIfCancelled();
+                } catch (Exception cancelled) {
+                    if (permit == CircuitBreaker.TRIAL) {
+                        circuitBreaker.releaseTrial();
+                    }
+                    throw cancelled;
+                }
+                record(circuitBreaker, e);
+                long delay = delayMillis(attempt);
+                if (!shouldRetry(e, attempt) || System.currentTimeMillis() + delay >= deadline) {
+                    throw e;
+                }
+                onError.call(e);
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    public static class Builder {
+        private int maxAttempts = 5;
+        private long baseDelayMillis = 500;
+        private long maxDelayMillis = 8000;
+        private long deadlineMillis = 60 * 1000;
+
+        /**
+         * @param maxAttempts total number of attempts, including the first one
+         */
+        public Builder maxAttempts(final int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * delay before the first retry, doubled at every attempt
+         */
+        public Builder baseDelay(final long delay, final TimeUnit timeUnit) {
+            this.baseDelayMillis = timeUnit.toMillis(delay);
+            return this;
+        }
+
+        public Builder maxDelay(final long delay, final TimeUnit timeUnit) {
+            this.maxDelayMillis = timeUnit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * no attempt is started after the deadline, counted from the first attempt
+         */
+        public Builder deadline(final long deadline, final TimeUnit timeUnit) {
+            this.deadlineMillis = timeUnit.toMillis(deadline);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
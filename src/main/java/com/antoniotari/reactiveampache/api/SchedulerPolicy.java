@@ -0,0 +1,145 @@
+package com.antoniotari.reactiveampache.api;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.antoniotari.reactiveampache.utils.ChunkedXmlParser;
+
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+
+/**
+ * the threads the requests run on and the thread their results are delivered on.
+ * interactive requests, like a search or the songs of an album, have their own pool so they don't
+ * wait behind the bulk requests that download the whole catalog, which run on a smaller pool
+ * of background priority threads
+ */
+public class SchedulerPolicy {
+
+    /**
+     * requests run on the pools, results are delivered on the main thread
+     */
+    public static final SchedulerPolicy DEFAULT = new Builder().build();
+
+    public enum Priority {
+        // the user is waiting for the result
+        INTERACTIVE,
+        // whole catalog downloads, streams and syncs
+        BULK
+    }
+
+    private final Scheduler mInteractiveScheduler;
+    private final Scheduler mBulkScheduler;
+    private final Scheduler mDeliveryScheduler;
+    private final ExecutorService mParseExecutor;
+
+    private SchedulerPolicy(final Builder builder) {
+        mInteractiveScheduler = Schedulers.from(newPool("ampache-interactive-", builder.interactiveThreads,
+                Process.THREAD_PRIORITY_DEFAULT));
+        mBulkScheduler = Schedulers.from(newPool("ampache-bulk-", builder.bulkThreads,
+                Process.THREAD_PRIORITY_BACKGROUND));
+        mDeliveryScheduler = builder.deliveryScheduler;
+        mParseExecutor = builder.parseThreads > 0 ?
+                newPool("ampache-parse-", builder.parseThreads, Process.THREAD_PRIORITY_DEFAULT) :
+                ChunkedXmlParser.getDefaultExecutor();
+    }
+
+    /**
+     * @return the scheduler the requests with the given priority are subscribed on
+     */
+    public Scheduler getScheduler(final Priority priority) {
+        return priority == Priority.INTERACTIVE ? mInteractiveScheduler : mBulkScheduler;
+    }
+
+    /**
+     * @return the scheduler the results are observed on, Schedulers.immediate() delivers them
+     * on the thread that made the request
+     */
+    public Scheduler getDeliveryScheduler() {
+        return mDeliveryScheduler;
+    }
+
+    /**
+     * @return the pool the chunks of the big lists are parsed on
+     */
+    public ExecutorService getParseExecutor() {
+        return mParseExecutor;
+    }
+
+    /**
+     * fixed size pool whose threads stop when they have been idle for a while
+     */
+    private static ExecutorService newPool(final String name, final int threads, final int threadPriority) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(threadPriority);
+                        runnable.run();
+                    }
+                }, name + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static class Builder {
+        private int interactiveThreads = 4;
+        private int bulkThreads = 2;
+        private int parseThreads = 0;
+        private Scheduler deliveryScheduler = AndroidSchedulers.mainThread();
+
+        /**
+         * @param threads max number of interactive requests running at the same time
+         */
+        public Builder interactiveThreads(final int threads) {
+            this.interactiveThreads = Math.max(threads, 1);
+            return this;
+        }
+
+        /**
+         * @param threads max number of bulk requests running at the same time, a stream
+         *                keeps its thread until it's completed
+         */
+        public Builder bulkThreads(final int threads) {
+            this.bulkThreads = Math.max(threads, 1);
+            return this;
+        }
+
+        /**
+         * @param threads size of the pool parsing the chunks of the big lists,
+         *                by default the shared pool with a thread per core
+         */
+        public Builder parseThreads(final int threads) {
+            this.parseThreads = Math.max(threads, 0);
+            return this;
+        }
+
+        /**
+         * @param scheduler where the results are delivered, Schedulers.immediate() to get them
+         *                  on the request thread and post-process them there
+         */
+        public Builder deliverOn(final Scheduler scheduler) {
+            this.deliveryScheduler = scheduler == null ? Schedulers.immediate() : scheduler;
+            return this;
+        }
+
+        public SchedulerPolicy build() {
+            return new SchedulerPolicy(this);
+        }
+    }
+}
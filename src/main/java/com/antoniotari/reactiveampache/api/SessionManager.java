@@ -0,0 +1,126 @@
+package com.antoniotari.reactiveampache.api;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.models.HandshakeResponse;
+import com.antoniotari.reactiveampache.models.PingResponse;
+import com.antoniotari.reactiveampache.utils.AmpacheUtils;
+
+/**
+ * keeps the ampache session alive.
+ * the session is renewed with a new handshake shortly before it expires, and when requests fail
+ * because the session expired only one handshake is made, the other failed requests wait for it
+ * and reuse the new auth token.
+ * every request extends the session on the server, so a ping is not needed while there is traffic
+ */
+class SessionManager {
+
+    // renew the session when it expires in less than this
+    private static final long RENEW_MARGIN_MILLIS = 60 * 1000;
+    // ampache default session length, used until the length is known
+    private static final long DEFAULT_SESSION_LENGTH_MILLIS = 60 * 60 * 1000;
+
+    // the auth token used by the last request made on each thread,
+    // the requests are synchronous so it's the token of the request that failed
+    private final ThreadLocal<String> mLastUsedAuth = new ThreadLocal<>();
+
+    private long mSessionLengthMillis = DEFAULT_SESSION_LENGTH_MILLIS;
+    private long mExpiresAt;
+    private long mLastActivity;
+    private PingResponse mLastPingResponse;
+
+    /**
+     * the auth token to use for a request, renews the session first if it's about to expire
+     */
+    String getAuth(final RawRequest rawRequest) throws Exception {
+        HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
+        String auth = handshakeResponse == null ? null : handshakeResponse.getAuth();
+        if (auth == null || isExpiring()) {
+            auth = renew(rawRequest, auth);
+        }
+        synchronized (this) {
+            mLastActivity = System.currentTimeMillis();
+            if (mExpiresAt > 0) {
+                mExpiresAt = mLastActivity + mSessionLengthMillis;
+            }
+        }
+        mLastUsedAuth.set(auth);
+        return auth;
+    }
+
+    /**
+     * a request failed because the session expired, renew it unless another request already did
+     */
+    void onAuthFailure(final RawRequest rawRequest) throws Exception {
+        renew(rawRequest, mLastUsedAuth.get());
+    }
+
+    /**
+     * handshake unless the session has already been renewed after the given token was issued.
+     * synchronized, concurrent callers wait for the handshake in progress and get its token
+     * @param staleAuth the token that is expired or about to expire
+     */
+    synchronized String renew(final RawRequest rawRequest, final String staleAuth) throws Exception {
+        HandshakeResponse current = AmpacheSession.INSTANCE.getHandshakeResponse();
+        if (current != null && current.getAuth() != null && !current.getAuth().equals(staleAuth) && !isExpiring()) {
+            return current.getAuth();
+        }
+        HandshakeResponse handshakeResponse = rawRequest.handshake();
+        if (handshakeResponse.getError() != null) throw new AmpacheApiException(handshakeResponse.getError());
+        onHandshake(handshakeResponse);
+        return handshakeResponse.getAuth();
+    }
+
+    /**
+     * store a new session
+     */
+    synchronized void onHandshake(final HandshakeResponse handshakeResponse) {
+        AmpacheSession.INSTANCE.setHandshakeResponse(handshakeResponse);
+        long now = System.currentTimeMillis();
+        long expiresAt = AmpacheUtils.parseIsoDate(handshakeResponse.getSession_expire());
+        if (expiresAt > now) {
+            mSessionLengthMillis = expiresAt - now;
+            mExpiresAt = expiresAt;
+        } else {
+            mExpiresAt = now + mSessionLengthMillis;
+        }
+        mLastActivity = now;
+    }
+
+    synchronized void onPing(final PingResponse pingResponse) {
+        mLastPingResponse = pingResponse;
+        long expiresAt = AmpacheUtils.parseIsoDate(pingResponse.getSession_expire());
+        if (expiresAt > 0) {
+            mExpiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @return the last ping response if other requests kept the session alive since then, null if a ping is needed
+     */
+    synchronized PingResponse getRecentPing() {
+        if (mLastPingResponse == null || mExpiresAt == 0) return null;
+        // other traffic refreshed the session less than half a session ago
+        if (System.currentTimeMillis() - mLastActivity < mSessionLengthMillis / 2) {
+            return mLastPingResponse;
+        }
+        return null;
+    }
+
+    synchronized void reset() {
+        mExpiresAt = 0;
+        mLastActivity = 0;
+        mLastPingResponse = null;
+        mSessionLengthMillis = DEFAULT_SESSION_LENGTH_MILLIS;
+    }
+
+    private synchronized boolean isExpiring() {
+        if (mExpiresAt == 0) {
+            // first request after a restart, use the expire date of the stored session
+            HandshakeResponse handshakeResponse = AmpacheSession.INSTANCE.getHandshakeResponse();
+            long expiresAt = handshakeResponse == null ? -1 : AmpacheUtils.parseIsoDate(handshakeResponse.getSession_expire());
+            if (expiresAt <= 0) return false;
+            mExpiresAt = expiresAt;
+        }
+        return mExpiresAt - System.currentTimeMillis() < RENEW_MARGIN_MILLIS;
+    }
+}
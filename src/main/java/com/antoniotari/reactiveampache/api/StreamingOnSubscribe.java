@@ -0,0 +1,107 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.InterruptedIOException;
+
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * emits the elements of a streamed response one by one, only as many as the subscriber requested.
+ * when the subscriber is slower than the parser the parsing thread waits for the next request,
+ * so the download is throttled by the socket instead of piling up the parsed elements in memory.
+ * the response is parsed on a worker of its own scheduler and the requests of the subscriber reach it from
+ * any other thread. don't use subscribeOn with the same scheduler: it would deliver the requests on a worker
+ * that can be waiting for them
+ */
+abstract class StreamingOnSubscribe<T> implements OnSubscribe<T> {
+
+    private final Scheduler mScheduler;
+
+    /**
+     * @param scheduler where the response is parsed, a worker is kept until the stream is over
+     */
+    StreamingOnSubscribe(final Scheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * make the request and pass every parsed element to the listener
+     */
+    abstract void stream(ElementListener<T> listener) throws Exception;
+
+    @Override
+    public void call(final Subscriber<? super T> subscriber) {
+        final FlowControl<T> flowControl = new FlowControl<>(subscriber);
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                flowControl.wakeUp();
+            }
+        }));
+        subscriber.setProducer(flowControl);
+        // the calls made while parsing are cancelled with the scope of the subscriber
+        final CallScope scope = CallScope.current();
+        Worker worker = mScheduler.createWorker();
+        subscriber.add(worker);
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                CallScope previous = CallScope.attach(scope);
+                try {
+                    stream(flowControl);
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                } finally {
+                    CallScope.attach(previous);
+                }
+            }
+        });
+    }
+
+    private static class FlowControl<T> implements Producer, ElementListener<T> {
+        private final Subscriber<? super T> mSubscriber;
+        private long mRequested;
+
+        FlowControl(final Subscriber<? super T> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public synchronized void request(final long n) {
+            if (n <= 0) return;
+            mRequested += n;
+            // Long.MAX_VALUE means no flow control
+            if (mRequested < 0) {
+                mRequested = Long.MAX_VALUE;
+            }
+            notifyAll();
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        @Override
+        public void onElement(final T element) throws Exception {
+            synchronized (this) {
+                while (mRequested == 0 && !mSubscriber.isUnsubscribed()) {
+                    wait();
+                }
+                if (mRequested != Long.MAX_VALUE) {
+                    mRequested--;
+                }
+            }
+            // stop parsing, the call is being cancelled too
+            if (mSubscriber.isUnsubscribed()) throw new InterruptedIOException("unsubscribed");
+            mSubscriber.onNext(element);
+        }
+    }
+}
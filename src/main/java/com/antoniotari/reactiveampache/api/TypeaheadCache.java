@@ -0,0 +1,84 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.antoniotari.reactiveampache.models.InfoTag;
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.Tag;
+import com.antoniotari.reactiveampache.utils.SongSearchIndex;
+
+/**
+ * the results of the latest searches, to answer a query that extends a previous one without the server.
+ * the server matches the filter anywhere in the title, artist, album or tags, so the songs matching "beatl"
+ * are among the ones matching "beat" and can be filtered from them.
+ * only the lists returned by the server are kept, a filtered list is never the base of another filter
+ */
+class TypeaheadCache {
+
+    private final int mMaxEntries;
+    private final LinkedHashMap<String, List<Song>> mResults = new LinkedHashMap<String, List<Song>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, List<Song>> eldest) {
+            return size() > mMaxEntries;
+        }
+    };
+
+    TypeaheadCache(final int maxEntries) {
+        mMaxEntries = maxEntries;
+    }
+
+    synchronized void put(final String query, final List<Song> songs) {
+        if (songs != null) {
+            mResults.put(SongSearchIndex.normalize(query), songs);
+        }
+    }
+
+    /**
+     * @return the songs matching the query, filtered from the results of the longest cached query it starts with,
+     * null if no cached query is a prefix of it
+     */
+    synchronized List<Song> refine(final String query) {
+        String normalized = SongSearchIndex.normalize(query);
+        String prefix = null;
+        for (String cached : mResults.keySet()) {
+            if (!cached.isEmpty() && normalized.startsWith(cached) && (prefix == null || cached.length() > prefix.length())) {
+                prefix = cached;
+            }
+        }
+        if (prefix == null) return null;
+
+        List<Song> songs = mResults.get(prefix);
+        if (prefix.equals(normalized)) return songs;
+        List<Song> refined = new ArrayList<>();
+        for (Song song : songs) {
+            if (contains(song.getTitle(), normalized) || contains(song.getArtist(), normalized) ||
+                    contains(song.getAlbum(), normalized) || containsTag(song.getTag(), normalized)) {
+                refined.add(song);
+            }
+        }
+        return refined;
+    }
+
+    synchronized void clear() {
+        mResults.clear();
+    }
+
+    private static boolean containsTag(final List<Tag> tags, final String normalized) {
+        if (tags == null) return false;
+        for (Tag tag : tags) {
+            if (contains(tag.getTag(), normalized)) return true;
+        }
+        return false;
+    }
+
+    private static boolean contains(final InfoTag infoTag, final String normalized) {
+        return infoTag != null && contains(infoTag.getName(), normalized);
+    }
+
+    private static boolean contains(final String text, final String normalized) {
+        return text != null && SongSearchIndex.normalize(text).contains(normalized);
+    }
+}
@@ -0,0 +1,315 @@
+package com.antoniotari.reactiveampache.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.models.Album;
+import com.antoniotari.reactiveampache.models.Artist;
+import com.antoniotari.reactiveampache.models.LazyModel;
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.Tag;
+import com.google.gson.Gson;
+
+/**
+ * local copy of the catalog to browse it without the server.
+ * every artist, album and song is stored as json, next to the ids it's looked up by:
+ * the albums are indexed by artist, the songs by artist and album and the tags of the songs by tag id.
+ * the database also records which lists were downloaded whole, only those can answer a query
+ */
+public class CatalogDatabase extends SQLiteOpenHelper {
+
+    // the lists that can be complete, see setComplete
+    public static final String ARTISTS = "artists";
+    public static final String ALBUMS = "albums";
+    public static final String SONGS = "songs";
+
+    private static final int VERSION = 2;
+
+    private static final String TABLE_ARTISTS = "artists";
+    private static final String TABLE_ALBUMS = "albums";
+    private static final String TABLE_SONGS = "songs";
+    private static final String TABLE_SONG_TAGS = "song_tags";
+    private static final String TABLE_COMPLETE = "complete";
+
+    private final Gson mGson = new Gson();
+
+    /**
+     * @param name  name of the database file, one per server and user
+     */
+    public CatalogDatabase(final Context context, final String name) {
+        super(context.getApplicationContext(), name, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(final SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ARTISTS + " (id TEXT PRIMARY KEY, json TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_ALBUMS + " (id TEXT PRIMARY KEY, artist_id TEXT, json TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_SONGS + " (id TEXT PRIMARY KEY, artist_id TEXT, album_id TEXT, " +
+                "track INTEGER, json TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_SONG_TAGS + " (song_id TEXT NOT NULL, tag_id INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX albums_artist ON " + TABLE_ALBUMS + " (artist_id)");
+        db.execSQL("CREATE INDEX songs_artist ON " + TABLE_SONGS + " (artist_id)");
+        db.execSQL("CREATE INDEX songs_album ON " + TABLE_SONGS + " (album_id, track)");
+        db.execSQL("CREATE INDEX song_tags_tag ON " + TABLE_SONG_TAGS + " (tag_id)");
+        db.execSQL("CREATE INDEX song_tags_song ON " + TABLE_SONG_TAGS + " (song_id)");
+        db.execSQL("CREATE TABLE " + TABLE_COMPLETE + " (name TEXT PRIMARY KEY)");
+    }
+
+    @Override
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        // it's only a copy of the server, download it again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTISTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ALBUMS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SONGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SONG_TAGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_COMPLETE);
+        onCreate(db);
+    }
+
+    /**
+     * @return true if no song has been stored yet
+     */
+    public boolean isEmpty() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SONGS) == 0;
+    }
+
+    /**
+     * @param list  ARTISTS, ALBUMS or SONGS
+     * @return true if the whole list was downloaded, otherwise the database has only the items
+     * of the requests made so far and a query could miss some of them
+     */
+    public boolean isComplete(final String list) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_COMPLETE, "name = ?", new String[]{list}) > 0;
+    }
+
+    /**
+     * the whole list has been stored, by a single request or by all its pages
+     * @param list  ARTISTS, ALBUMS or SONGS
+     */
+    public void setComplete(final String list) {
+        setComplete(getWritableDatabase(), list);
+    }
+
+    /**
+     * replace the whole catalog, after a full sync
+     */
+    public void replaceCatalog(final List<Artist> artists, final List<Album> albums, final List<Song> songs) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            clear(db);
+            insertArtists(db, artists);
+            insertAlbums(db, albums);
+            insertSongs(db, songs);
+            setComplete(db, ARTISTS);
+            setComplete(db, ALBUMS);
+            setComplete(db, SONGS);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * add the artists or replace the stored ones with the same id
+     */
+    public void putArtists(final List<Artist> artists) {
+        if (artists == null || artists.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertArtists(db, artists);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void putAlbums(final List<Album> albums) {
+        if (albums == null || albums.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertAlbums(db, albums);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void putSongs(final List<Song> songs) {
+        if (songs == null || songs.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertSongs(db, songs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return every stored song, in the order they were stored
+     */
+    public List<Song> getSongs() {
+        List<Song> list = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT json FROM " + TABLE_SONGS + " ORDER BY rowid", null);
+        try {
+            while (cursor.moveToNext()) {
+                list.add(mGson.fromJson(cursor.getString(0), Song.class));
+            }
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    public List<Album> getAlbumsFromArtist(final String artistId) {
+        return query("SELECT json FROM " + TABLE_ALBUMS + " WHERE artist_id = ? ORDER BY rowid", artistId, Album.class);
+    }
+
+    /**
+     * @return the songs of the album in track order
+     */
+    public List<Song> getSongsFromAlbum(final String albumId) {
+        return query("SELECT json FROM " + TABLE_SONGS + " WHERE album_id = ? ORDER BY track, rowid", albumId, Song.class);
+    }
+
+    public List<Song> getSongsFromArtist(final String artistId) {
+        return query("SELECT json FROM " + TABLE_SONGS + " WHERE artist_id = ? ORDER BY rowid", artistId, Song.class);
+    }
+
+    public List<Song> getTagSongs(final String tagId) {
+        return query("SELECT s.json FROM " + TABLE_SONG_TAGS + " t JOIN " + TABLE_SONGS + " s ON s.id = t.song_id " +
+                "WHERE t.tag_id = ? ORDER BY s.rowid", tagId, Song.class);
+    }
+
+    public void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            clear(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void clear(final SQLiteDatabase db) {
+        db.delete(TABLE_ARTISTS, null, null);
+        db.delete(TABLE_ALBUMS, null, null);
+        db.delete(TABLE_SONGS, null, null);
+        db.delete(TABLE_SONG_TAGS, null, null);
+        db.delete(TABLE_COMPLETE, null, null);
+    }
+
+    private static void setComplete(final SQLiteDatabase db, final String list) {
+        ContentValues values = new ContentValues();
+        values.put("name", list);
+        db.insertWithOnConflict(TABLE_COMPLETE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private <T> List<T> query(final String sql, final String id, final Class<T> classOfT) {
+        List<T> list = new ArrayList<>();
+        if (id == null) return list;
+        Cursor cursor = getReadableDatabase().rawQuery(sql, new String[]{id});
+        try {
+            while (cursor.moveToNext()) {
+                list.add(mGson.fromJson(cursor.getString(0), classOfT));
+            }
+        } finally {
+            cursor.close();
+        }
+        return list;
+    }
+
+    private void insertArtists(final SQLiteDatabase db, final List<Artist> artists) {
+        if (artists == null) return;
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_ARTISTS + " (id, json) VALUES (?, ?)");
+        try {
+            for (Artist artist : artists) {
+                if (artist.getId() == null) continue;
+                statement.bindString(1, artist.getId());
+                statement.bindString(2, mGson.toJson(artist));
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertAlbums(final SQLiteDatabase db, final List<Album> albums) {
+        if (albums == null) return;
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_ALBUMS +
+                " (id, artist_id, json) VALUES (?, ?, ?)");
+        try {
+            for (Album album : albums) {
+                if (album.getId() == null) continue;
+                statement.clearBindings();
+                statement.bindString(1, album.getId());
+                if (album.getArtist() != null && album.getArtist().getId() != null) {
+                    statement.bindString(2, album.getArtist().getId());
+                }
+                statement.bindString(3, toJson(album));
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertSongs(final SQLiteDatabase db, final List<Song> songs) {
+        if (songs == null) return;
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_SONGS +
+                " (id, artist_id, album_id, track, json) VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement deleteTags = db.compileStatement("DELETE FROM " + TABLE_SONG_TAGS + " WHERE song_id = ?");
+        SQLiteStatement insertTag = db.compileStatement("INSERT INTO " + TABLE_SONG_TAGS + " (song_id, tag_id) VALUES (?, ?)");
+        try {
+            for (Song song : songs) {
+                if (song.getId() == null) continue;
+                statement.clearBindings();
+                statement.bindString(1, song.getId());
+                if (song.getArtist() != null && song.getArtist().getId() != null) {
+                    statement.bindString(2, song.getArtist().getId());
+                }
+                if (song.getAlbum() != null && song.getAlbum().getId() != null) {
+                    statement.bindString(3, song.getAlbum().getId());
+                }
+                statement.bindLong(4, song.getTrack());
+                statement.bindString(5, toJson(song));
+                statement.executeInsert();
+
+                deleteTags.bindString(1, song.getId());
+                deleteTags.executeUpdateDelete();
+                if (song.getTag() != null) {
+                    for (Tag tag : song.getTag()) {
+                        insertTag.bindString(1, song.getId());
+                        insertTag.bindLong(2, tag.getId());
+                        insertTag.executeInsert();
+                    }
+                }
+            }
+        } finally {
+            statement.close();
+            deleteTags.close();
+            insertTag.close();
+        }
+    }
+
+    private String toJson(final Object model) {
+        // gson reads the fields, not the getters
+        if (model instanceof LazyModel) {
+            ((LazyModel) model).materialize();
+        }
+        return mGson.toJson(model);
+    }
+}
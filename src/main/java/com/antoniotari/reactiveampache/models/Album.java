@@ -11,34 +11,34 @@ import org.simpleframework.xml.Element;
  */
 public class Album implements Parcelable{
     @Attribute (name = "id", required = false)
-    private String id;
+    String id;
 
     @Element (name = "name", required = false)
-    private String name;
+    String name;
 
     @Element (name = "artist", required = false)
-    private InfoTag artist;
+    InfoTag artist;
 
     @Element (name = "year", required = false)
-    private String year;
+    String year;
 
     @Element (name = "tracks", required = false)
-    private int tracks;
+    int tracks;
 
     @Element (name = "disk", required = false)
-    private float disk;
+    float disk;
 
     @Element (name = "art", required = false)
-    private String art;
+    String art;
 
     @Element (name = "preciserating", required = false)
-    private float preciserating;
+    float preciserating;
 
     @Element (name = "rating", required = false)
-    private float rating;
+    float rating;
 
     @Element (name = "averagerating", required = false)
-    private float averagerating;
+    float averagerating;
 
     public Album(){
 
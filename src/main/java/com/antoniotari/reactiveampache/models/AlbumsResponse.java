@@ -18,4 +18,22 @@ public class AlbumsResponse extends BaseResponse {
         return albums;
     }
 
+    public AlbumsResponse() {
+    }
+
+    public AlbumsResponse(final List<Album> albums) {
+        this.albums = albums;
+    }
+
+    @Override
+    public String toJson() {
+        if (albums != null) {
+            for (Album album : albums) {
+                if (album instanceof LazyModel) {
+                    ((LazyModel) album).materialize();
+                }
+            }
+        }
+        return super.toJson();
+    }
 }
@@ -15,28 +15,28 @@ import org.simpleframework.xml.ElementList;
  */
 public class Artist implements Parcelable {
     @Attribute (name = "id", required = false)
-    private String id;
+    String id;
 
     @Element (name = "name", required = false)
-    private String name;
+    String name;
 
     @ElementList (inline = true, required = false)
-    private List<Tag> tag;
+    List<Tag> tag;
 
     @Element (name = "albums", required = false)
-    private int albums;
+    int albums;
 
     @Element (name = "songs", required = false)
-    private int songs;
+    int songs;
 
     @Element (name = "preciserating", required = false)
-    private float preciserating;
+    float preciserating;
 
     @Element (name = "rating", required = false)
-    private float rating;
+    float rating;
 
     @Element (name = "averagerating", required = false)
-    private float averagerating;
+    float averagerating;
 
     /**
      * default constructor to avoid Constructor not matched error
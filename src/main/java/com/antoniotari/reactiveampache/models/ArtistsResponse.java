@@ -17,4 +17,11 @@ public class ArtistsResponse extends BaseResponse {
     public List<Artist> getArtists() {
         return artists;
     }
+
+    public ArtistsResponse() {
+    }
+
+    public ArtistsResponse(final List<Artist> artists) {
+        this.artists = artists;
+    }
 }
@@ -11,7 +11,7 @@ import org.simpleframework.xml.Element;
 public class BaseResponse {
 
     @Element (name = "error", required = false)
-    private Error error;
+    Error error;
 
     public Error getError() {
         return error;
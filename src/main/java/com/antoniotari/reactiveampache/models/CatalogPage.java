@@ -0,0 +1,52 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.util.List;
+
+/**
+ * one page of a paged catalog request
+ */
+public class CatalogPage<T> {
+
+    private final List<T> items;
+    private final int offset;
+    private final int total;
+    private final boolean last;
+
+    public CatalogPage(final List<T> items, final int offset, final int total, final boolean last) {
+        this.items = items;
+        this.offset = offset;
+        this.total = total;
+        this.last = last;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * position of the first item of this page in the whole catalog
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * total number of items as reported by the handshake, 0 if unknown
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * @return a value between 0 and 1, how much of the catalog has been received including this page
+     */
+    public float getProgress() {
+        if (last) return 1f;
+        if (total <= 0) return 0f;
+        return Math.min(1f, (float) (offset + items.size()) / total);
+    }
+}
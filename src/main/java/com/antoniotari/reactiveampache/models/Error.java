@@ -9,10 +9,10 @@ import org.simpleframework.xml.Text;
 public class Error {
 
     @Attribute (name = "code", required = false)
-    private String code;
+    String code;
 
     @Text
-    private String error;
+    String error;
 
     public String getCode() {
         return code;
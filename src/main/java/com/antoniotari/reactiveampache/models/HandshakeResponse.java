@@ -10,40 +10,40 @@ import org.simpleframework.xml.Root;
 public class HandshakeResponse extends BaseResponse {
 
     @Element (name="auth")
-    private String auth;
+    String auth;
 
     @Element(name="api", required = false)
-    private int api;
+    int api;
 
     @Element (name="session_expire", required = false)
-    private String session_expire;
+    String session_expire;
 
     @Element (name="update", required = false)
-    private String update;
+    String update;
 
     @Element (name="add", required = false)
-    private String add;
+    String add;
 
     @Element (name="clean", required = false)
-    private String clean;
+    String clean;
 
     @Element(name="songs", required = false)
-    private int songs;
+    int songs;
 
     @Element(name="albums", required = false)
-    private int albums;
+    int albums;
 
     @Element(name="artists", required = false)
-    private int artists;
+    int artists;
 
     @Element(name="playlists", required = false)
-    private int playlists;
+    int playlists;
 
     @Element(name="videos", required = false)
-    private int videos;
+    int videos;
 
     @Element(name="catalogs", required = false)
-    private int catalogs;
+    int catalogs;
 
     public String getAuth() {
         return auth;
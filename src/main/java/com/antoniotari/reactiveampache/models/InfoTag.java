@@ -12,10 +12,10 @@ import org.simpleframework.xml.Text;
 public class InfoTag implements Parcelable {
 
     @Attribute (name = "id")
-    private String id;
+    String id;
 
     @Text (required=false)
-    private String name;
+    String name;
 
     public InfoTag(){
 
@@ -0,0 +1,19 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * reads a single model from the fields of a json object.
+ * the fields are read one by one so the same reader works for an object in a list
+ * and for the fields of a single object sent as the whole response
+ */
+public interface JsonElementReader<T> {
+    T newElement();
+
+    /**
+     * read the value of the field into the element, the unknown fields must be skipped
+     */
+    void readField(T element, String name, JsonReader reader) throws IOException;
+}
@@ -0,0 +1,395 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * readers for the models sent by json.server.php.
+ * the json api sends numbers either as numbers or as strings depending on the server version,
+ * so every value is read leniently
+ */
+public final class JsonElementReaders {
+
+    private JsonElementReaders() {
+    }
+
+    public static final JsonElementReader<InfoTag> INFO_TAG = new JsonElementReader<InfoTag>() {
+        @Override
+        public InfoTag newElement() {
+            return new InfoTag();
+        }
+
+        @Override
+        public void readField(final InfoTag infoTag, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    infoTag.id = nextString(reader);
+                    break;
+                case "name":
+                    infoTag.name = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<Tag> TAG = new JsonElementReader<Tag>() {
+        @Override
+        public Tag newElement() {
+            return new Tag();
+        }
+
+        @Override
+        public void readField(final Tag tag, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    tag.id = nextInt(reader);
+                    break;
+                case "count":
+                    tag.count = nextInt(reader);
+                    break;
+                case "name":
+                    tag.tag = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    /**
+     * api 4 sends code and message, api 5 sends errorCode and errorMessage
+     */
+    public static final JsonElementReader<Error> ERROR = new JsonElementReader<Error>() {
+        @Override
+        public Error newElement() {
+            return new Error();
+        }
+
+        @Override
+        public void readField(final Error error, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "code":
+                case "errorCode":
+                    error.code = nextString(reader);
+                    break;
+                case "message":
+                case "errorMessage":
+                    error.error = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<Song> SONG = new JsonElementReader<Song>() {
+        @Override
+        public Song newElement() {
+            return new Song();
+        }
+
+        @Override
+        public void readField(final Song song, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    song.id = nextString(reader);
+                    break;
+                case "title":
+                    song.title = nextString(reader);
+                    break;
+                case "name":
+                    // newer servers send the title in both fields
+                    String title = nextString(reader);
+                    if (song.title == null) {
+                        song.title = title;
+                    }
+                    break;
+                case "artist":
+                    song.artist = ModelInterner.intern(readObject(reader, INFO_TAG));
+                    break;
+                case "album":
+                    song.album = ModelInterner.intern(readObject(reader, INFO_TAG));
+                    break;
+                case "tag":
+                case "genre":
+                    song.tag = readTags(reader);
+                    break;
+                case "track":
+                    song.track = nextInt(reader);
+                    break;
+                case "time":
+                    song.time = nextInt(reader);
+                    break;
+                case "year":
+                    song.year = nextString(reader);
+                    break;
+                case "bitrate":
+                    song.bitrate = nextInt(reader);
+                    break;
+                case "mode":
+                    song.mode = nextString(reader);
+                    break;
+                case "mime":
+                    song.mime = nextString(reader);
+                    break;
+                case "url":
+                    song.url = nextString(reader);
+                    break;
+                case "size":
+                    song.size = nextInt(reader);
+                    break;
+                case "mbid":
+                    song.mbid = nextString(reader);
+                    break;
+                case "album_mbid":
+                    song.album_mbid = nextString(reader);
+                    break;
+                case "artist_mbid":
+                    song.artist_mbid = nextString(reader);
+                    break;
+                case "art":
+                    song.art = nextString(reader);
+                    break;
+                case "preciserating":
+                    song.preciserating = nextFloat(reader);
+                    break;
+                case "rating":
+                    song.rating = nextFloat(reader);
+                    break;
+                case "averagerating":
+                    song.averagerating = nextFloat(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<Album> ALBUM = new JsonElementReader<Album>() {
+        @Override
+        public Album newElement() {
+            return new Album();
+        }
+
+        @Override
+        public void readField(final Album album, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    album.id = nextString(reader);
+                    break;
+                case "name":
+                    album.name = nextString(reader);
+                    break;
+                case "artist":
+                    album.artist = ModelInterner.intern(readObject(reader, INFO_TAG));
+                    break;
+                case "year":
+                    album.year = nextString(reader);
+                    break;
+                case "tracks":
+                case "songcount":
+                    album.tracks = nextInt(reader);
+                    break;
+                case "disk":
+                    album.disk = nextFloat(reader);
+                    break;
+                case "art":
+                    album.art = nextString(reader);
+                    break;
+                case "preciserating":
+                    album.preciserating = nextFloat(reader);
+                    break;
+                case "rating":
+                    album.rating = nextFloat(reader);
+                    break;
+                case "averagerating":
+                    album.averagerating = nextFloat(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<Artist> ARTIST = new JsonElementReader<Artist>() {
+        @Override
+        public Artist newElement() {
+            return new Artist();
+        }
+
+        @Override
+        public void readField(final Artist artist, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    artist.id = nextString(reader);
+                    break;
+                case "name":
+                    artist.name = nextString(reader);
+                    break;
+                case "tag":
+                case "genre":
+                    artist.tag = readTags(reader);
+                    break;
+                case "albums":
+                case "albumcount":
+                    // newer servers send the list of albums here, the count is in albumcount
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                    } else {
+                        artist.albums = nextInt(reader);
+                    }
+                    break;
+                case "songs":
+                case "songcount":
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                    } else {
+                        artist.songs = nextInt(reader);
+                    }
+                    break;
+                case "preciserating":
+                    artist.preciserating = nextFloat(reader);
+                    break;
+                case "rating":
+                    artist.rating = nextFloat(reader);
+                    break;
+                case "averagerating":
+                    artist.averagerating = nextFloat(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<Playlist> PLAYLIST = new JsonElementReader<Playlist>() {
+        @Override
+        public Playlist newElement() {
+            return new Playlist();
+        }
+
+        @Override
+        public void readField(final Playlist playlist, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    playlist.id = nextString(reader);
+                    break;
+                case "name":
+                    playlist.name = nextString(reader);
+                    break;
+                case "owner":
+                    playlist.owner = nextString(reader);
+                    break;
+                case "items":
+                    playlist.items = nextInt(reader);
+                    break;
+                case "type":
+                    playlist.type = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    public static final JsonElementReader<TagEntity> TAG_ENTITY = new JsonElementReader<TagEntity>() {
+        @Override
+        public TagEntity newElement() {
+            return new TagEntity();
+        }
+
+        @Override
+        public void readField(final TagEntity tagEntity, final String name, final JsonReader reader) throws IOException {
+            switch (name) {
+                case "id":
+                    tagEntity.id = nextString(reader);
+                    break;
+                case "name":
+                    tagEntity.name = nextString(reader);
+                    break;
+                case "songs":
+                    tagEntity.songs = nextInt(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    };
+
+    /**
+     * read a whole object with the given reader, null if the value is not an object
+     */
+    public static <T> T readObject(final JsonReader reader, final JsonElementReader<T> elementReader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        T element = elementReader.newElement();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            elementReader.readField(element, reader.nextName(), reader);
+        }
+        reader.endObject();
+        return element;
+    }
+
+    static ArrayList<Tag> readTags(final JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        ArrayList<Tag> tags = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Tag tag = ModelInterner.intern(readObject(reader, TAG));
+            if (tag != null) {
+                tags.add(tag);
+            }
+        }
+        reader.endArray();
+        return tags;
+    }
+
+    static String nextString(final JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    static int nextInt(final JsonReader reader) throws IOException {
+        String value = nextString(reader);
+        try {
+            return XmlElementReaders.parseInt(value);
+        } catch (NumberFormatException e) {
+            // e.g. 1.0
+            return (int) XmlElementReaders.parseFloat(value);
+        }
+    }
+
+    static float nextFloat(final JsonReader reader) throws IOException {
+        return XmlElementReaders.parseFloat(nextString(reader));
+    }
+}
@@ -0,0 +1,113 @@
+package com.antoniotari.reactiveampache.models;
+
+import android.os.Parcel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * an album read in lazy mode, year and art are decoded the first time their getter is called
+ */
+public class LazyAlbum extends Album implements LazyModel {
+
+    private static final int YEAR = 0;
+    private static final int ART = 1;
+    private static final int FIELD_COUNT = 2;
+
+    private final transient LazyFields mFields;
+
+    private LazyAlbum() {
+        mFields = new LazyFields(FIELD_COUNT);
+    }
+
+    /**
+     * @param xml   a whole albums response
+     * @return the albums of the response, empty if there are none, e.g. for an error response
+     */
+    public static List<Album> readList(final byte[] xml) {
+        int[] elements = LazyXml.findElements(xml, "album");
+        List<Album> albums = new ArrayList<>(elements.length / 2);
+        for (int i = 0; i < elements.length; i += 2) {
+            albums.add(read(xml, elements[i], elements[i + 1]));
+        }
+        return albums;
+    }
+
+    /**
+     * @param raw   the document, the element goes from the start to the end offset
+     */
+    static LazyAlbum read(final byte[] raw, final int start, final int end) {
+        final LazyAlbum album = new LazyAlbum();
+        int attrEnd = LazyXml.scan(raw, start, end, new LazyXml.ChildVisitor() {
+            @Override
+            public void onChild(final String name, final int attrStart, final int attrEnd,
+                    final int textStart, final int textEnd, final boolean cdata) {
+                switch (name) {
+                    case "name":
+                        album.name = LazyXml.text(raw, textStart, textEnd, cdata);
+                        break;
+                    case "artist":
+                        album.artist = LazyXml.infoTag(raw, attrStart, attrEnd, textStart, textEnd, cdata);
+                        break;
+                    case "tracks":
+                        album.tracks = LazyXml.parseInt(raw, textStart, textEnd, cdata);
+                        break;
+                    case "disk":
+                        album.disk = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "preciserating":
+                        album.preciserating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "rating":
+                        album.rating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "averagerating":
+                        album.averagerating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "year":
+                        album.mFields.set(YEAR, textStart, textEnd, cdata);
+                        break;
+                    case "art":
+                        album.mFields.set(ART, textStart, textEnd, cdata);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        album.id = LazyXml.attribute(raw, start, attrEnd, "id");
+        album.mFields.compact(raw);
+        return album;
+    }
+
+    @Override
+    public synchronized String getYear() {
+        if (mFields.isPending(YEAR)) year = mFields.decode(YEAR);
+        return year;
+    }
+
+    @Override
+    public synchronized String getArt() {
+        if (mFields.isPending(ART)) art = mFields.decode(ART);
+        return art;
+    }
+
+    @Override
+    public synchronized void materialize() {
+        if (!mFields.hasPending()) return;
+        getYear();
+        getArt();
+    }
+
+    @Override
+    public int getRawSize() {
+        return mFields.getRawSize();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // the parcel is read back as a plain album
+        materialize();
+        super.writeToParcel(dest, flags);
+    }
+}
@@ -0,0 +1,84 @@
+package com.antoniotari.reactiveampache.models;
+
+/**
+ * the byte ranges of the lazy fields of a model, every field is decoded once then forgotten.
+ * the ranges are copied out of the document into one small buffer, so the model keeps only
+ * the text of its pending fields. when no field is pending anymore the buffer is released
+ */
+final class LazyFields {
+
+    private byte[] mRaw;
+    private int mRawSize;
+    private final int[] mStarts;
+    private final int[] mEnds;
+    private int mPending;
+    private int mCdata;
+
+    LazyFields(final int fieldCount) {
+        mStarts = new int[fieldCount];
+        mEnds = new int[fieldCount];
+    }
+
+    /**
+     * @param start     start of the text in the document, compact must be called once all the fields are set
+     */
+    void set(final int field, final int start, final int end, final boolean cdata) {
+        mStarts[field] = start;
+        mEnds[field] = end;
+        mPending |= 1 << field;
+        if (cdata) {
+            mCdata |= 1 << field;
+        } else {
+            mCdata &= ~(1 << field);
+        }
+    }
+
+    /**
+     * copy the text of the pending fields out of the document, the model doesn't keep the document alive
+     */
+    void compact(final byte[] document) {
+        int size = 0;
+        for (int field = 0; field < mStarts.length; field++) {
+            if (isPending(field)) {
+                size += mEnds[field] - mStarts[field];
+            }
+        }
+        byte[] raw = new byte[size];
+        int offset = 0;
+        for (int field = 0; field < mStarts.length; field++) {
+            if (isPending(field)) {
+                int length = mEnds[field] - mStarts[field];
+                System.arraycopy(document, mStarts[field], raw, offset, length);
+                mStarts[field] = offset;
+                mEnds[field] = offset + length;
+                offset += length;
+            }
+        }
+        mRaw = mPending == 0 ? null : raw;
+        mRawSize = size;
+    }
+
+    boolean isPending(final int field) {
+        return (mPending & (1 << field)) != 0;
+    }
+
+    boolean hasPending() {
+        return mPending != 0;
+    }
+
+    /**
+     * decode a pending field, the caller must store the value since it's decoded only once
+     */
+    String decode(final int field) {
+        String value = LazyXml.text(mRaw, mStarts[field], mEnds[field], (mCdata & (1 << field)) != 0);
+        mPending &= ~(1 << field);
+        if (mPending == 0) {
+            mRaw = null;
+        }
+        return value;
+    }
+
+    int getRawSize() {
+        return mRawSize;
+    }
+}
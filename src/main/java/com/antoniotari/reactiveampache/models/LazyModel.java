@@ -0,0 +1,18 @@
+package com.antoniotari.reactiveampache.models;
+
+/**
+ * a model that keeps the raw bytes of some fields of its xml element and decodes them only when their getter is called
+ */
+public interface LazyModel {
+
+    /**
+     * decode all the fields still pending and release the raw bytes,
+     * called before the model is serialized
+     */
+    void materialize();
+
+    /**
+     * @return size in bytes of the text kept for the fields not decoded yet
+     */
+    int getRawSize();
+}
@@ -0,0 +1,195 @@
+package com.antoniotari.reactiveampache.models;
+
+import android.os.Parcel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a song read in lazy mode: id, title, artist, album, tags and the numbers are decoded right away,
+ * the other strings are kept as bytes of the xml element and decoded the first time their getter is called
+ */
+public class LazySong extends Song implements LazyModel {
+
+    private static final int YEAR = 0;
+    private static final int MODE = 1;
+    private static final int MIME = 2;
+    private static final int URL = 3;
+    private static final int MBID = 4;
+    private static final int ALBUM_MBID = 5;
+    private static final int ARTIST_MBID = 6;
+    private static final int ART = 7;
+    private static final int FIELD_COUNT = 8;
+
+    private final transient LazyFields mFields;
+
+    private LazySong() {
+        mFields = new LazyFields(FIELD_COUNT);
+    }
+
+    /**
+     * @param xml   a whole songs response
+     * @return the songs of the response, empty if there are none, e.g. for an error response
+     */
+    public static List<Song> readList(final byte[] xml) {
+        int[] elements = LazyXml.findElements(xml, "song");
+        List<Song> songs = new ArrayList<>(elements.length / 2);
+        for (int i = 0; i < elements.length; i += 2) {
+            songs.add(read(xml, elements[i], elements[i + 1]));
+        }
+        return songs;
+    }
+
+    /**
+     * @param raw   the document, the element goes from the start to the end offset
+     */
+    static LazySong read(final byte[] raw, final int start, final int end) {
+        final LazySong song = new LazySong();
+        int attrEnd = LazyXml.scan(raw, start, end, new LazyXml.ChildVisitor() {
+            @Override
+            public void onChild(final String name, final int attrStart, final int attrEnd,
+                    final int textStart, final int textEnd, final boolean cdata) {
+                switch (name) {
+                    case "title":
+                        song.title = LazyXml.text(raw, textStart, textEnd, cdata);
+                        break;
+                    case "artist":
+                        song.artist = LazyXml.infoTag(raw, attrStart, attrEnd, textStart, textEnd, cdata);
+                        break;
+                    case "album":
+                        song.album = LazyXml.infoTag(raw, attrStart, attrEnd, textStart, textEnd, cdata);
+                        break;
+                    case "tag":
+                        if (song.tag == null) {
+                            song.tag = new ArrayList<>();
+                        }
+                        song.tag.add(LazyXml.tag(raw, attrStart, attrEnd, textStart, textEnd, cdata));
+                        break;
+                    case "track":
+                        song.track = LazyXml.parseInt(raw, textStart, textEnd, cdata);
+                        break;
+                    case "time":
+                        song.time = LazyXml.parseInt(raw, textStart, textEnd, cdata);
+                        break;
+                    case "bitrate":
+                        song.bitrate = LazyXml.parseInt(raw, textStart, textEnd, cdata);
+                        break;
+                    case "size":
+                        song.size = LazyXml.parseInt(raw, textStart, textEnd, cdata);
+                        break;
+                    case "preciserating":
+                        song.preciserating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "rating":
+                        song.rating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "averagerating":
+                        song.averagerating = LazyXml.parseFloat(raw, textStart, textEnd, cdata);
+                        break;
+                    case "year":
+                        song.mFields.set(YEAR, textStart, textEnd, cdata);
+                        break;
+                    case "mode":
+                        song.mFields.set(MODE, textStart, textEnd, cdata);
+                        break;
+                    case "mime":
+                        song.mFields.set(MIME, textStart, textEnd, cdata);
+                        break;
+                    case "url":
+                        song.mFields.set(URL, textStart, textEnd, cdata);
+                        break;
+                    case "mbid":
+                        song.mFields.set(MBID, textStart, textEnd, cdata);
+                        break;
+                    case "album_mbid":
+                        song.mFields.set(ALBUM_MBID, textStart, textEnd, cdata);
+                        break;
+                    case "artist_mbid":
+                        song.mFields.set(ARTIST_MBID, textStart, textEnd, cdata);
+                        break;
+                    case "art":
+                        song.mFields.set(ART, textStart, textEnd, cdata);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        song.id = LazyXml.attribute(raw, start, attrEnd, "id");
+        song.mFields.compact(raw);
+        return song;
+    }
+
+    @Override
+    public synchronized String getYear() {
+        if (mFields.isPending(YEAR)) year = mFields.decode(YEAR);
+        return year;
+    }
+
+    @Override
+    public synchronized String getMode() {
+        if (mFields.isPending(MODE)) mode = mFields.decode(MODE);
+        return mode;
+    }
+
+    @Override
+    public synchronized String getMime() {
+        if (mFields.isPending(MIME)) mime = mFields.decode(MIME);
+        return mime;
+    }
+
+    @Override
+    public synchronized String getUrl() {
+        if (mFields.isPending(URL)) url = mFields.decode(URL);
+        return url;
+    }
+
+    @Override
+    public synchronized String getMbid() {
+        if (mFields.isPending(MBID)) mbid = mFields.decode(MBID);
+        return mbid;
+    }
+
+    @Override
+    public synchronized String getAlbum_mbid() {
+        if (mFields.isPending(ALBUM_MBID)) album_mbid = mFields.decode(ALBUM_MBID);
+        return album_mbid;
+    }
+
+    @Override
+    public synchronized String getArtist_mbid() {
+        if (mFields.isPending(ARTIST_MBID)) artist_mbid = mFields.decode(ARTIST_MBID);
+        return artist_mbid;
+    }
+
+    @Override
+    public synchronized String getArt() {
+        if (mFields.isPending(ART)) art = mFields.decode(ART);
+        return art;
+    }
+
+    @Override
+    public synchronized void materialize() {
+        if (!mFields.hasPending()) return;
+        getYear();
+        getMode();
+        getMime();
+        getUrl();
+        getMbid();
+        getAlbum_mbid();
+        getArtist_mbid();
+        getArt();
+    }
+
+    @Override
+    public int getRawSize() {
+        return mFields.getRawSize();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        // the parcel is read back as a plain song
+        materialize();
+        super.writeToParcel(dest, flags);
+    }
+}
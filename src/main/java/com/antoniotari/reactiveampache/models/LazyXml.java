@@ -0,0 +1,299 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.utils.ChunkedXmlParser;
+
+/**
+ * byte level scanner for the flat elements of ampache, e.g. a song element.
+ * it finds the children of the element without decoding them, the text of a child
+ * is decoded from utf-8 only when it's needed
+ */
+final class LazyXml {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(UTF_8);
+    private static final byte[] CDATA_END = "]]>".getBytes(UTF_8);
+    private static final byte[] COMMENT_START = "<!--".getBytes(UTF_8);
+    private static final byte[] COMMENT_END = "-->".getBytes(UTF_8);
+
+    interface ChildVisitor {
+        /**
+         * @param name          name of the child element
+         * @param attrStart     start of the attributes in the start tag
+         * @param attrEnd       end of the attributes
+         * @param textStart     start of the text of the child, inside the CDATA section if there is one
+         * @param textEnd       end of the text
+         * @param cdata         true if the text is a CDATA section and must not be unescaped
+         */
+        void onChild(String name, int attrStart, int attrEnd, int textStart, int textEnd, boolean cdata);
+    }
+
+    private LazyXml() {
+    }
+
+    /**
+     * @return start and end of every top level element with the given name, two entries per element
+     */
+    static int[] findElements(final byte[] xml, final String elementName) {
+        List<Integer> starts = ChunkedXmlParser.findElementStarts(xml, elementName);
+        int[] elements = new int[starts.size() * 2];
+        byte[] closing = ("</" + elementName + ">").getBytes(UTF_8);
+        for (int i = 0; i < starts.size(); i++) {
+            int from = starts.get(i);
+            int limit = i + 1 < starts.size() ? starts.get(i + 1) : xml.length;
+            int end = lastIndexOf(xml, closing, from, limit);
+            elements[i * 2] = from;
+            elements[i * 2 + 1] = end == -1 ? limit : end + closing.length;
+        }
+        return elements;
+    }
+
+    /**
+     * read the id attribute and the text of an element like the artist of a song
+     */
+    static InfoTag infoTag(final byte[] data, final int attrStart, final int attrEnd,
+            final int textStart, final int textEnd, final boolean cdata) {
+        InfoTag infoTag = new InfoTag();
+        infoTag.id = attribute(data, attrStart, attrEnd, "id");
+        infoTag.name = text(data, textStart, textEnd, cdata);
+        return ModelInterner.intern(infoTag);
+    }
+
+    static Tag tag(final byte[] data, final int attrStart, final int attrEnd,
+            final int textStart, final int textEnd, final boolean cdata) {
+        Tag tag = new Tag();
+        try {
+            tag.id = XmlElementReaders.parseInt(attribute(data, attrStart, attrEnd, "id"));
+            tag.count = XmlElementReaders.parseInt(attribute(data, attrStart, attrEnd, "count"));
+        } catch (NumberFormatException e) {
+            // keep the tag without the numbers
+        }
+        tag.tag = text(data, textStart, textEnd, cdata);
+        return ModelInterner.intern(tag);
+    }
+
+    /**
+     * @param data  the document
+     * @param from  start of the element, its start tag
+     * @param to    end of the element, after its end tag
+     * @return the end of the attributes of the element, they start after its name
+     */
+    static int scan(final byte[] data, final int from, final int to, final ChildVisitor visitor) {
+        int i = indexOf(data, (byte) '<', from, to);
+        if (i == -1) return from;
+        int attrEnd = endOfTag(data, i, to);
+        if (attrEnd == -1 || data[attrEnd - 1] == '/') return Math.max(attrEnd - 1, from);
+        int rootAttrEnd = attrEnd;
+
+        i = attrEnd + 1;
+        while (i < to) {
+            i = indexOf(data, (byte) '<', i, to);
+            if (i == -1 || i + 1 >= to || data[i + 1] == '/') break;
+            if (matches(data, i, COMMENT_START)) {
+                int end = indexOf(data, COMMENT_END, i, to);
+                if (end == -1) break;
+                i = end + COMMENT_END.length;
+                continue;
+            }
+
+            int nameStart = i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < to && !isNameEnd(data[nameEnd])) {
+                nameEnd++;
+            }
+            String name = new String(data, nameStart, nameEnd - nameStart, UTF_8);
+            int tagEnd = endOfTag(data, i, to);
+            if (tagEnd == -1) break;
+
+            if (data[tagEnd - 1] == '/') {
+                visitor.onChild(name, nameEnd, tagEnd - 1, tagEnd, tagEnd, false);
+                i = tagEnd + 1;
+                continue;
+            }
+
+            byte[] closing = ("</" + name).getBytes(UTF_8);
+            int textStart = tagEnd + 1;
+            int textEnd;
+            boolean cdata = false;
+            int next = skipWhitespace(data, textStart, to);
+            if (matches(data, next, CDATA_START)) {
+                cdata = true;
+                textStart = next + CDATA_START.length;
+                textEnd = indexOf(data, CDATA_END, textStart, to);
+                if (textEnd == -1) break;
+                i = indexOf(data, closing, textEnd + CDATA_END.length, to);
+            } else {
+                textEnd = indexOf(data, closing, textStart, to);
+                i = textEnd;
+            }
+            if (i == -1 || textEnd == -1) break;
+            visitor.onChild(name, nameEnd, tagEnd, textStart, textEnd, cdata);
+            i = endOfTag(data, i, to);
+            if (i == -1) break;
+            i++;
+        }
+        return rootAttrEnd;
+    }
+
+    /**
+     * @return the value of the attribute between start and end, null if it's not there
+     */
+    static String attribute(final byte[] data, final int start, final int end, final String name) {
+        byte[] pattern = (name + "=").getBytes(UTF_8);
+        int i = start;
+        while (i < end) {
+            i = indexOf(data, pattern, i, end);
+            if (i == -1) return null;
+            int quoteAt = i + pattern.length;
+            // the attribute name must not be the end of a longer name
+            if (i > start && !isNameEnd(data[i - 1]) || quoteAt >= end) {
+                i = quoteAt;
+                continue;
+            }
+            byte quote = data[quoteAt];
+            int valueEnd = indexOf(data, quote, quoteAt + 1, end);
+            if (valueEnd == -1) return null;
+            return text(data, quoteAt + 1, valueEnd, false);
+        }
+        return null;
+    }
+
+    /**
+     * decode the text, unescaping the entities unless it's a CDATA section
+     */
+    static String text(final byte[] data, final int start, final int end, final boolean cdata) {
+        String text = new String(data, start, end - start, UTF_8);
+        if (cdata || text.indexOf('&') == -1) {
+            return cdata ? text : text.trim();
+        }
+        return unescape(text.trim());
+    }
+
+    static String unescape(final String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int semicolon = c == '&' ? text.indexOf(';', i) : -1;
+            if (semicolon == -1 || semicolon - i > 10) {
+                builder.append(c);
+                i++;
+                continue;
+            }
+            String entity = text.substring(i + 1, semicolon);
+            String replacement = null;
+            switch (entity) {
+                case "amp":
+                    replacement = "&";
+                    break;
+                case "lt":
+                    replacement = "<";
+                    break;
+                case "gt":
+                    replacement = ">";
+                    break;
+                case "quot":
+                    replacement = "\"";
+                    break;
+                case "apos":
+                    replacement = "'";
+                    break;
+                default:
+                    try {
+                        if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                            replacement = new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+                        } else if (entity.startsWith("#")) {
+                            replacement = new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        replacement = null;
+                    }
+                    break;
+            }
+            if (replacement == null) {
+                builder.append(c);
+                i++;
+            } else {
+                builder.append(replacement);
+                i = semicolon + 1;
+            }
+        }
+        return builder.toString();
+    }
+
+    static int parseInt(final byte[] data, final int start, final int end, final boolean cdata) {
+        try {
+            return XmlElementReaders.parseInt(text(data, start, end, cdata));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static float parseFloat(final byte[] data, final int start, final int end, final boolean cdata) {
+        try {
+            return XmlElementReaders.parseFloat(text(data, start, end, cdata));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the position of the > closing the tag that starts at the given position, skipping quoted values
+     */
+    private static int endOfTag(final byte[] data, final int tagStart, final int limit) {
+        byte quote = 0;
+        for (int i = tagStart + 1; i < limit; i++) {
+            byte b = data[i];
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameEnd(final byte b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static int skipWhitespace(final byte[] data, int i, final int limit) {
+        while (i < limit && (data[i] == ' ' || data[i] == '\t' || data[i] == '\n' || data[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean matches(final byte[] data, final int offset, final byte[] pattern) {
+        if (offset < 0 || offset + pattern.length > data.length) return false;
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[offset + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(final byte[] data, final byte b, final int from, final int limit) {
+        for (int i = from; i < limit; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(final byte[] data, final byte[] pattern, final int from, final int limit) {
+        for (int i = limit - pattern.length; i >= from; i--) {
+            if (matches(data, i, pattern)) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(final byte[] data, final byte[] pattern, final int from, final int limit) {
+        for (int i = Math.max(from, 0); i <= limit - pattern.length; i++) {
+            if (matches(data, i, pattern)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,128 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pool of the artists, albums and tags read by the parsers, so all the songs of an artist
+ * share the same InfoTag and the same name instead of a copy each.
+ * the models are never changed after they are read, so sharing them is safe.
+ * the pool is emptied when it grows over the max number of entries
+ */
+public final class ModelInterner {
+
+    public static final int DEFAULT_MAX_ENTRIES = 50000;
+
+    private static volatile boolean sEnabled;
+    private static volatile int sMaxEntries = DEFAULT_MAX_ENTRIES;
+    private static final ConcurrentHashMap<Key, InfoTag> sInfoTags = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Key, Tag> sTags = new ConcurrentHashMap<>();
+    private static final AtomicLong sHits = new AtomicLong();
+
+    private ModelInterner() {
+    }
+
+    /**
+     * share the artists, albums and tags of the responses parsed from now on, disabled by default
+     */
+    public static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @param maxEntries    max number of artists and albums, and of tags, kept in the pool
+     */
+    public static void setMaxEntries(final int maxEntries) {
+        sMaxEntries = Math.max(maxEntries, 1);
+    }
+
+    /**
+     * the models already parsed keep the instances they share
+     */
+    public static void clear() {
+        sInfoTags.clear();
+        sTags.clear();
+    }
+
+    /**
+     * @return number of models that were replaced by an instance from the pool
+     */
+    public static long getHits() {
+        return sHits.get();
+    }
+
+    public static int size() {
+        return sInfoTags.size() + sTags.size();
+    }
+
+    /**
+     * @return the instance in the pool with the same id and name, the given one if it's the first
+     */
+    static InfoTag intern(final InfoTag infoTag) {
+        if (!sEnabled || infoTag == null) return infoTag;
+        return intern(sInfoTags, new Key(infoTag.id, infoTag.name, 0, 0), infoTag);
+    }
+
+    static Tag intern(final Tag tag) {
+        if (!sEnabled || tag == null) return tag;
+        return intern(sTags, new Key(tag.tag, null, tag.id, tag.count), tag);
+    }
+
+    private static <T> T intern(final ConcurrentHashMap<Key, T> pool, final Key key, final T value) {
+        T shared = pool.get(key);
+        if (shared != null) {
+            sHits.incrementAndGet();
+            return shared;
+        }
+        if (pool.size() >= sMaxEntries) {
+            pool.clear();
+        }
+        shared = pool.putIfAbsent(key, value);
+        if (shared != null) {
+            sHits.incrementAndGet();
+            return shared;
+        }
+        return value;
+    }
+
+    private static final class Key {
+        private final String mText;
+        private final String mOtherText;
+        private final int mNumber;
+        private final int mOtherNumber;
+        private final int mHash;
+
+        Key(final String text, final String otherText, final int number, final int otherNumber) {
+            mText = text;
+            mOtherText = otherText;
+            mNumber = number;
+            mOtherNumber = otherNumber;
+            int hash = text == null ? 0 : text.hashCode();
+            hash = hash * 31 + (otherText == null ? 0 : otherText.hashCode());
+            hash = hash * 31 + number;
+            mHash = hash * 31 + otherNumber;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mNumber == key.mNumber && mOtherNumber == key.mOtherNumber &&
+                    (mText == null ? key.mText == null : mText.equals(key.mText)) &&
+                    (mOtherText == null ? key.mOtherText == null : mOtherText.equals(key.mOtherText));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
@@ -9,16 +9,16 @@ import org.simpleframework.xml.Root;
 @Root
 public class PingResponse extends BaseResponse {
     @Element (name="session_expire")
-    private String session_expire;
+    String session_expire;
 
     @Element (name="server")
-    private String server;
+    String server;
 
     @Element (name="version")
-    private String version;
+    String version;
 
     @Element (name="compatible")
-    private String compatible;
+    String compatible;
 
     public String getSession_expire() {
         return session_expire;
@@ -15,4 +15,11 @@ public class PlaylistsResponse extends BaseResponse {
     public List<Playlist> getPlaylists() {
         return playlists;
     }
+
+    public PlaylistsResponse() {
+    }
+
+    public PlaylistsResponse(final List<Playlist> playlists) {
+        this.playlists = playlists;
+    }
 }
@@ -0,0 +1,451 @@
+package com.antoniotari.reactiveampache.models;
+
+import android.os.Parcel;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * a read only list of songs stored by column instead of one object per song.
+ * the numbers are kept in primitive arrays, the strings that repeat across songs (year, mode, mime, art,
+ * the mbids of album and artist) and the artists, albums and tag lists are stored once and referenced by code.
+ * get returns a small row object that reads the columns, so the table can be used as a List of Song
+ */
+public class SongTable extends AbstractList<Song> implements RandomAccess {
+
+    private static final int NONE = -1;
+
+    private final int mSize;
+
+    private final String[] mIds;
+    private final String[] mTitles;
+    private final String[] mUrls;
+    private final String[] mMbids;
+
+    private final int[] mTracks;
+    private final int[] mTimes;
+    private final int[] mBitrates;
+    private final int[] mSizes;
+    private final float[] mPreciseratings;
+    private final float[] mRatings;
+    private final float[] mAverageratings;
+
+    private final int[] mArtists;
+    private final int[] mAlbums;
+    private final int[] mTagLists;
+    private final int[] mYears;
+    private final int[] mModes;
+    private final int[] mMimes;
+    private final int[] mAlbumMbids;
+    private final int[] mArtistMbids;
+    private final int[] mArts;
+
+    private final Object[] mInfoTagValues;
+    private final Object[] mTagListValues;
+    private final Object[] mStringValues;
+
+    private SongTable(final Builder builder) {
+        mSize = builder.size;
+        mIds = trim(builder.ids, mSize);
+        mTitles = trim(builder.titles, mSize);
+        mUrls = trim(builder.urls, mSize);
+        mMbids = trim(builder.mbids, mSize);
+        mTracks = trim(builder.tracks, mSize);
+        mTimes = trim(builder.times, mSize);
+        mBitrates = trim(builder.bitrates, mSize);
+        mSizes = trim(builder.sizes, mSize);
+        mPreciseratings = trim(builder.preciseratings, mSize);
+        mRatings = trim(builder.ratings, mSize);
+        mAverageratings = trim(builder.averageratings, mSize);
+        mArtists = trim(builder.artists, mSize);
+        mAlbums = trim(builder.albums, mSize);
+        mTagLists = trim(builder.tagLists, mSize);
+        mYears = trim(builder.years, mSize);
+        mModes = trim(builder.modes, mSize);
+        mMimes = trim(builder.mimes, mSize);
+        mAlbumMbids = trim(builder.albumMbids, mSize);
+        mArtistMbids = trim(builder.artistMbids, mSize);
+        mArts = trim(builder.arts, mSize);
+        mInfoTagValues = builder.infoTagDictionary.values.toArray();
+        mTagListValues = builder.tagListDictionary.values.toArray();
+        mStringValues = builder.stringDictionary.values.toArray();
+    }
+
+    /**
+     * the columns of a builder that was filled up to its capacity are taken as they are,
+     * the builder copies them before adding another song
+     */
+    private static String[] trim(final String[] column, final int size) {
+        return column.length == size ? column : Arrays.copyOf(column, size);
+    }
+
+    private static int[] trim(final int[] column, final int size) {
+        return column.length == size ? column : Arrays.copyOf(column, size);
+    }
+
+    private static float[] trim(final float[] column, final int size) {
+        return column.length == size ? column : Arrays.copyOf(column, size);
+    }
+
+    /**
+     * copy the songs into a new table
+     */
+    public static SongTable of(final Collection<Song> songs) {
+        Builder builder = new Builder(songs.size());
+        for (Song song : songs) {
+            builder.add(song);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Song get(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        return new Row(this, index);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return position of the song with the given id, -1 if it's not in the table
+     */
+    public int indexOfId(final String songId) {
+        if (songId == null) return NONE;
+        for (int i = 0; i < mSize; i++) {
+            if (songId.equals(mIds[i])) return i;
+        }
+        return NONE;
+    }
+
+    private String string(final int code) {
+        return code == NONE ? null : (String) mStringValues[code];
+    }
+
+    private InfoTag infoTag(final int code) {
+        return code == NONE ? null : (InfoTag) mInfoTagValues[code];
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Tag> tagList(final int code) {
+        return code == NONE ? null : (List<Tag>) mTagListValues[code];
+    }
+
+    /**
+     * a song of the table, the getters read the columns.
+     * the fields of the song are filled only by materialize, called before the row is serialized
+     */
+    public static final class Row extends Song implements LazyModel {
+
+        private final transient SongTable mTable;
+        private final transient int mIndex;
+
+        private Row(final SongTable table, final int index) {
+            mTable = table;
+            mIndex = index;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        @Override
+        public String getId() {
+            return mTable.mIds[mIndex];
+        }
+
+        @Override
+        public String getTitle() {
+            return mTable.mTitles[mIndex];
+        }
+
+        @Override
+        public InfoTag getArtist() {
+            return mTable.infoTag(mTable.mArtists[mIndex]);
+        }
+
+        @Override
+        public InfoTag getAlbum() {
+            return mTable.infoTag(mTable.mAlbums[mIndex]);
+        }
+
+        @Override
+        public List<Tag> getTag() {
+            return mTable.tagList(mTable.mTagLists[mIndex]);
+        }
+
+        @Override
+        public int getTrack() {
+            return mTable.mTracks[mIndex];
+        }
+
+        @Override
+        public int getTime() {
+            return mTable.mTimes[mIndex];
+        }
+
+        @Override
+        public String getYear() {
+            return mTable.string(mTable.mYears[mIndex]);
+        }
+
+        @Override
+        public int getBitrate() {
+            return mTable.mBitrates[mIndex];
+        }
+
+        @Override
+        public String getMode() {
+            return mTable.string(mTable.mModes[mIndex]);
+        }
+
+        @Override
+        public String getMime() {
+            return mTable.string(mTable.mMimes[mIndex]);
+        }
+
+        @Override
+        public String getUrl() {
+            return mTable.mUrls[mIndex];
+        }
+
+        @Override
+        public int getSize() {
+            return mTable.mSizes[mIndex];
+        }
+
+        @Override
+        public String getMbid() {
+            return mTable.mMbids[mIndex];
+        }
+
+        @Override
+        public String getAlbum_mbid() {
+            return mTable.string(mTable.mAlbumMbids[mIndex]);
+        }
+
+        @Override
+        public String getArtist_mbid() {
+            return mTable.string(mTable.mArtistMbids[mIndex]);
+        }
+
+        @Override
+        public String getArt() {
+            return mTable.string(mTable.mArts[mIndex]);
+        }
+
+        @Override
+        public float getPreciserating() {
+            return mTable.mPreciseratings[mIndex];
+        }
+
+        @Override
+        public float getRating() {
+            return mTable.mRatings[mIndex];
+        }
+
+        @Override
+        public float getAveragerating() {
+            return mTable.mAverageratings[mIndex];
+        }
+
+        @Override
+        public synchronized void materialize() {
+            id = getId();
+            title = getTitle();
+            artist = getArtist();
+            album = getAlbum();
+            List<Tag> tags = getTag();
+            tag = tags == null ? null : new ArrayList<>(tags);
+            track = getTrack();
+            time = getTime();
+            year = getYear();
+            bitrate = getBitrate();
+            mode = getMode();
+            mime = getMime();
+            url = getUrl();
+            size = getSize();
+            mbid = getMbid();
+            album_mbid = getAlbum_mbid();
+            artist_mbid = getArtist_mbid();
+            art = getArt();
+            preciserating = getPreciserating();
+            rating = getRating();
+            averagerating = getAveragerating();
+        }
+
+        @Override
+        public int getRawSize() {
+            // the columns belong to the table
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            // the parcel is read back as a plain song
+            materialize();
+            super.writeToParcel(dest, flags);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Row && ((Row) o).mTable == mTable && ((Row) o).mIndex == mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mTable) * 31 + mIndex;
+        }
+    }
+
+    /**
+     * values stored once, referenced by their position
+     */
+    private static final class Dictionary<T> {
+        final HashMap<Object, Integer> codes = new HashMap<>();
+        final ArrayList<T> values = new ArrayList<>();
+
+        int encode(final Object key, final T value) {
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = values.size();
+                codes.put(key, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * fills the columns one song at a time, e.g. while a songs response is parsed,
+     * so the whole list of songs is never in memory
+     */
+    public static class Builder {
+        private int size;
+        private String[] ids;
+        private String[] titles;
+        private String[] urls;
+        private String[] mbids;
+        private int[] tracks;
+        private int[] times;
+        private int[] bitrates;
+        private int[] sizes;
+        private float[] preciseratings;
+        private float[] ratings;
+        private float[] averageratings;
+        private int[] artists;
+        private int[] albums;
+        private int[] tagLists;
+        private int[] years;
+        private int[] modes;
+        private int[] mimes;
+        private int[] albumMbids;
+        private int[] artistMbids;
+        private int[] arts;
+
+        private final Dictionary<InfoTag> infoTagDictionary = new Dictionary<>();
+        private final Dictionary<List<Tag>> tagListDictionary = new Dictionary<>();
+        private final Dictionary<Tag> tagDictionary = new Dictionary<>();
+        private final Dictionary<String> stringDictionary = new Dictionary<>();
+
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * @param capacity  expected number of songs, when it's exact the columns are not copied by build
+         */
+        public Builder(final int capacity) {
+            allocate(Math.max(capacity, 1));
+        }
+
+        public Builder add(final Song song) {
+            if (size == ids.length) {
+                allocate(size + (size >> 1) + 1);
+            }
+            int i = size++;
+            ids[i] = song.getId();
+            titles[i] = song.getTitle();
+            urls[i] = song.getUrl();
+            mbids[i] = song.getMbid();
+            tracks[i] = song.getTrack();
+            times[i] = song.getTime();
+            bitrates[i] = song.getBitrate();
+            sizes[i] = song.getSize();
+            preciseratings[i] = song.getPreciserating();
+            ratings[i] = song.getRating();
+            averageratings[i] = song.getAveragerating();
+            artists[i] = encode(song.getArtist());
+            albums[i] = encode(song.getAlbum());
+            tagLists[i] = encode(song.getTag());
+            years[i] = encode(song.getYear());
+            modes[i] = encode(song.getMode());
+            mimes[i] = encode(song.getMime());
+            albumMbids[i] = encode(song.getAlbum_mbid());
+            artistMbids[i] = encode(song.getArtist_mbid());
+            arts[i] = encode(song.getArt());
+            return this;
+        }
+
+        public SongTable build() {
+            return new SongTable(this);
+        }
+
+        private int encode(final String value) {
+            return value == null ? NONE : stringDictionary.encode(value, value);
+        }
+
+        private int encode(final InfoTag infoTag) {
+            if (infoTag == null) return NONE;
+            return infoTagDictionary.encode(Arrays.asList(infoTag.getId(), infoTag.getName()), infoTag);
+        }
+
+        /**
+         * the songs with the same tags share the same unmodifiable list
+         */
+        private int encode(final List<Tag> tagList) {
+            if (tagList == null) return NONE;
+            List<Integer> key = new ArrayList<>(tagList.size());
+            List<Tag> shared = new ArrayList<>(tagList.size());
+            for (Tag tag : tagList) {
+                int code = tagDictionary.encode(Arrays.asList(tag.getId(), tag.getCount(), tag.getTag()), tag);
+                key.add(code);
+                shared.add(tagDictionary.values.get(code));
+            }
+            return tagListDictionary.encode(key, Collections.unmodifiableList(shared));
+        }
+
+        private void allocate(final int capacity) {
+            ids = ids == null ? new String[capacity] : Arrays.copyOf(ids, capacity);
+            titles = titles == null ? new String[capacity] : Arrays.copyOf(titles, capacity);
+            urls = urls == null ? new String[capacity] : Arrays.copyOf(urls, capacity);
+            mbids = mbids == null ? new String[capacity] : Arrays.copyOf(mbids, capacity);
+            tracks = tracks == null ? new int[capacity] : Arrays.copyOf(tracks, capacity);
+            times = times == null ? new int[capacity] : Arrays.copyOf(times, capacity);
+            bitrates = bitrates == null ? new int[capacity] : Arrays.copyOf(bitrates, capacity);
+            sizes = sizes == null ? new int[capacity] : Arrays.copyOf(sizes, capacity);
+            preciseratings = preciseratings == null ? new float[capacity] : Arrays.copyOf(preciseratings, capacity);
+            ratings = ratings == null ? new float[capacity] : Arrays.copyOf(ratings, capacity);
+            averageratings = averageratings == null ? new float[capacity] : Arrays.copyOf(averageratings, capacity);
+            artists = artists == null ? new int[capacity] : Arrays.copyOf(artists, capacity);
+            albums = albums == null ? new int[capacity] : Arrays.copyOf(albums, capacity);
+            tagLists = tagLists == null ? new int[capacity] : Arrays.copyOf(tagLists, capacity);
+            years = years == null ? new int[capacity] : Arrays.copyOf(years, capacity);
+            modes = modes == null ? new int[capacity] : Arrays.copyOf(modes, capacity);
+            mimes = mimes == null ? new int[capacity] : Arrays.copyOf(mimes, capacity);
+            albumMbids = albumMbids == null ? new int[capacity] : Arrays.copyOf(albumMbids, capacity);
+            artistMbids = artistMbids == null ? new int[capacity] : Arrays.copyOf(artistMbids, capacity);
+            arts = arts == null ? new int[capacity] : Arrays.copyOf(arts, capacity);
+        }
+    }
+}
@@ -25,6 +25,22 @@ public class SongsResponse extends BaseResponse implements Parcelable {
     public SongsResponse(){
     }
 
+    public SongsResponse(final List<Song> songs) {
+        this.songs = songs;
+    }
+
+    @Override
+    public String toJson() {
+        if (songs != null) {
+            for (Song song : songs) {
+                if (song instanceof LazyModel) {
+                    ((LazyModel) song).materialize();
+                }
+            }
+        }
+        return super.toJson();
+    }
+
     protected SongsResponse(Parcel in) {
         if (in.readByte() == 0x01) {
             songs = new ArrayList<Song>();
@@ -0,0 +1,45 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.util.List;
+
+/**
+ * result of a catalog sync, if it's a full sync the lists contain the whole catalog
+ * otherwise only the items added or updated since the previous sync
+ */
+public class SyncResult {
+
+    private final boolean fullSync;
+    private final List<Artist> artists;
+    private final List<Album> albums;
+    private final List<Song> songs;
+
+    public SyncResult(final boolean fullSync, final List<Artist> artists, final List<Album> albums, final List<Song> songs) {
+        this.fullSync = fullSync;
+        this.artists = artists;
+        this.albums = albums;
+        this.songs = songs;
+    }
+
+    /**
+     * @return true if the lists replace the whole catalog, when false they must be merged with the previous sync
+     */
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+    public List<Artist> getArtists() {
+        return artists;
+    }
+
+    public List<Album> getAlbums() {
+        return albums;
+    }
+
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    public boolean isEmpty() {
+        return artists.isEmpty() && albums.isEmpty() && songs.isEmpty();
+    }
+}
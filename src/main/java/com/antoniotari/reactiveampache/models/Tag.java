@@ -11,13 +11,13 @@ import org.simpleframework.xml.Text;
  */
 public class Tag implements Parcelable {
     @Attribute (name = "id")
-    private int id;
+    int id;
 
     @Attribute (name = "count", required = false)
-    private int count;
+    int count;
 
     @Text (required = false)
-    private String tag;
+    String tag;
 
     public int getId() {
         return id;
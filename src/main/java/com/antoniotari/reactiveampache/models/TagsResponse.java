@@ -21,4 +21,8 @@ public class TagsResponse extends BaseResponse {
      * Required for deserialization?
      */
     public TagsResponse() {}
+
+    public TagsResponse(final List<TagEntity> tags) {
+        this.tags = tags;
+    }
 }
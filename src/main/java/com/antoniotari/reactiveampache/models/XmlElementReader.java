@@ -0,0 +1,14 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * reads a single model from a pull parser positioned on its start tag,
+ * when it returns the parser is positioned on the matching end tag
+ */
+public interface XmlElementReader<T> {
+    T read(XmlPullParser parser) throws XmlPullParserException, IOException;
+}
@@ -0,0 +1,336 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * pull parser readers for the models,
+ * they read the same elements and attributes declared with the simple xml annotations
+ * on each model but without going through reflection
+ */
+public final class XmlElementReaders {
+
+    private XmlElementReaders() {
+    }
+
+    public static final XmlElementReader<InfoTag> INFO_TAG = new XmlElementReader<InfoTag>() {
+        @Override
+        public InfoTag read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            InfoTag infoTag = new InfoTag();
+            infoTag.id = parser.getAttributeValue(null, "id");
+            infoTag.name = readText(parser);
+            return ModelInterner.intern(infoTag);
+        }
+    };
+
+    public static final XmlElementReader<Tag> TAG = new XmlElementReader<Tag>() {
+        @Override
+        public Tag read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Tag tag = new Tag();
+            tag.id = parseInt(parser.getAttributeValue(null, "id"));
+            tag.count = parseInt(parser.getAttributeValue(null, "count"));
+            tag.tag = readText(parser);
+            return ModelInterner.intern(tag);
+        }
+    };
+
+    /**
+     * older servers send the message as text of the error element with a code attribute,
+     * api 5 servers send an errorCode attribute and the message inside child elements
+     */
+    public static final XmlElementReader<Error> ERROR = new XmlElementReader<Error>() {
+        @Override
+        public Error read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Error error = new Error();
+            error.code = parser.getAttributeValue(null, "code");
+            if (error.code == null) {
+                error.code = parser.getAttributeValue(null, "errorCode");
+            }
+            StringBuilder message = new StringBuilder();
+            int depth = 1;
+            while (depth > 0) {
+                switch (parser.next()) {
+                    case XmlPullParser.START_TAG:
+                        depth++;
+                        break;
+                    case XmlPullParser.END_TAG:
+                        depth--;
+                        break;
+                    case XmlPullParser.TEXT:
+                    case XmlPullParser.CDSECT:
+                        message.append(parser.getText());
+                        break;
+                    case XmlPullParser.END_DOCUMENT:
+                        depth = 0;
+                        break;
+                }
+            }
+            error.error = message.toString().trim();
+            return error;
+        }
+    };
+
+    public static final XmlElementReader<Song> SONG = new XmlElementReader<Song>() {
+        @Override
+        public Song read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Song song = new Song();
+            song.id = parser.getAttributeValue(null, "id");
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "title":
+                        song.title = readText(parser);
+                        break;
+                    case "artist":
+                        song.artist = INFO_TAG.read(parser);
+                        break;
+                    case "album":
+                        song.album = INFO_TAG.read(parser);
+                        break;
+                    case "tag":
+                        if (song.tag == null) {
+                            song.tag = new ArrayList<>();
+                        }
+                        song.tag.add(TAG.read(parser));
+                        break;
+                    case "track":
+                        song.track = parseInt(readText(parser));
+                        break;
+                    case "time":
+                        song.time = parseInt(readText(parser));
+                        break;
+                    case "year":
+                        song.year = readText(parser);
+                        break;
+                    case "bitrate":
+                        song.bitrate = parseInt(readText(parser));
+                        break;
+                    case "mode":
+                        song.mode = readText(parser);
+                        break;
+                    case "mime":
+                        song.mime = readText(parser);
+                        break;
+                    case "url":
+                        song.url = readText(parser);
+                        break;
+                    case "size":
+                        song.size = parseInt(readText(parser));
+                        break;
+                    case "mbid":
+                        song.mbid = readText(parser);
+                        break;
+                    case "album_mbid":
+                        song.album_mbid = readText(parser);
+                        break;
+                    case "artist_mbid":
+                        song.artist_mbid = readText(parser);
+                        break;
+                    case "art":
+                        song.art = readText(parser);
+                        break;
+                    case "preciserating":
+                        song.preciserating = parseFloat(readText(parser));
+                        break;
+                    case "rating":
+                        song.rating = parseFloat(readText(parser));
+                        break;
+                    case "averagerating":
+                        song.averagerating = parseFloat(readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            return song;
+        }
+    };
+
+    public static final XmlElementReader<Album> ALBUM = new XmlElementReader<Album>() {
+        @Override
+        public Album read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Album album = new Album();
+            album.id = parser.getAttributeValue(null, "id");
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "name":
+                        album.name = readText(parser);
+                        break;
+                    case "artist":
+                        album.artist = INFO_TAG.read(parser);
+                        break;
+                    case "year":
+                        album.year = readText(parser);
+                        break;
+                    case "tracks":
+                        album.tracks = parseInt(readText(parser));
+                        break;
+                    case "disk":
+                        album.disk = parseFloat(readText(parser));
+                        break;
+                    case "art":
+                        album.art = readText(parser);
+                        break;
+                    case "preciserating":
+                        album.preciserating = parseFloat(readText(parser));
+                        break;
+                    case "rating":
+                        album.rating = parseFloat(readText(parser));
+                        break;
+                    case "averagerating":
+                        album.averagerating = parseFloat(readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            return album;
+        }
+    };
+
+    public static final XmlElementReader<Artist> ARTIST = new XmlElementReader<Artist>() {
+        @Override
+        public Artist read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Artist artist = new Artist();
+            artist.id = parser.getAttributeValue(null, "id");
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "name":
+                        artist.name = readText(parser);
+                        break;
+                    case "tag":
+                        if (artist.tag == null) {
+                            artist.tag = new ArrayList<>();
+                        }
+                        artist.tag.add(TAG.read(parser));
+                        break;
+                    case "albums":
+                        artist.albums = parseInt(readText(parser));
+                        break;
+                    case "songs":
+                        artist.songs = parseInt(readText(parser));
+                        break;
+                    case "preciserating":
+                        artist.preciserating = parseFloat(readText(parser));
+                        break;
+                    case "rating":
+                        artist.rating = parseFloat(readText(parser));
+                        break;
+                    case "averagerating":
+                        artist.averagerating = parseFloat(readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            return artist;
+        }
+    };
+
+    public static final XmlElementReader<Playlist> PLAYLIST = new XmlElementReader<Playlist>() {
+        @Override
+        public Playlist read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            Playlist playlist = new Playlist();
+            playlist.id = parser.getAttributeValue(null, "id");
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "name":
+                        playlist.name = readText(parser);
+                        break;
+                    case "owner":
+                        playlist.owner = readText(parser);
+                        break;
+                    case "items":
+                        playlist.items = parseInt(readText(parser));
+                        break;
+                    case "type":
+                        playlist.type = readText(parser);
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            return playlist;
+        }
+    };
+
+    public static final XmlElementReader<TagEntity> TAG_ENTITY = new XmlElementReader<TagEntity>() {
+        @Override
+        public TagEntity read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            TagEntity tagEntity = new TagEntity();
+            tagEntity.id = parser.getAttributeValue(null, "id");
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "name":
+                        tagEntity.name = readText(parser);
+                        break;
+                    case "songs":
+                        tagEntity.songs = parseInt(readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            return tagEntity;
+        }
+    };
+
+    /**
+     * move to the next child start tag of the current element
+     * @return false when the end tag of the current element is reached
+     */
+    static boolean nextChild(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG) {
+                return true;
+            }
+            if (event == XmlPullParser.END_TAG) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * skip the current element and all of its children
+     */
+    static void skip(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+
+    static String readText(final XmlPullParser parser) throws XmlPullParserException, IOException {
+        return parser.nextText();
+    }
+
+    static int parseInt(final String value) {
+        if (value == null) return 0;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? 0 : Integer.parseInt(trimmed);
+    }
+
+    static float parseFloat(final String value) {
+        if (value == null) return 0;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? 0 : Float.parseFloat(trimmed);
+    }
+}
@@ -0,0 +1,244 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import static com.antoniotari.reactiveampache.models.XmlElementReaders.nextChild;
+import static com.antoniotari.reactiveampache.models.XmlElementReaders.parseInt;
+import static com.antoniotari.reactiveampache.models.XmlElementReaders.readText;
+import static com.antoniotari.reactiveampache.models.XmlElementReaders.skip;
+
+/**
+ * pull parser readers for the whole responses, positioned on the root element.
+ * they replace the simple xml reflection for every response of the api,
+ * use forClass to find the reader of a response class
+ */
+public final class XmlResponseReaders {
+
+    private XmlResponseReaders() {
+    }
+
+    public static final XmlElementReader<SongsResponse> SONGS = new XmlElementReader<SongsResponse>() {
+        @Override
+        public SongsResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            List<Song> songs = new ArrayList<>();
+            Error error = readList(parser, "song", XmlElementReaders.SONG, songs);
+            SongsResponse response = new SongsResponse(songs);
+            response.error = error;
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<AlbumsResponse> ALBUMS = new XmlElementReader<AlbumsResponse>() {
+        @Override
+        public AlbumsResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            List<Album> albums = new ArrayList<>();
+            Error error = readList(parser, "album", XmlElementReaders.ALBUM, albums);
+            AlbumsResponse response = new AlbumsResponse(albums);
+            response.error = error;
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<ArtistsResponse> ARTISTS = new XmlElementReader<ArtistsResponse>() {
+        @Override
+        public ArtistsResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            List<Artist> artists = new ArrayList<>();
+            Error error = readList(parser, "artist", XmlElementReaders.ARTIST, artists);
+            ArtistsResponse response = new ArtistsResponse(artists);
+            response.error = error;
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<PlaylistsResponse> PLAYLISTS = new XmlElementReader<PlaylistsResponse>() {
+        @Override
+        public PlaylistsResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            List<Playlist> playlists = new ArrayList<>();
+            Error error = readList(parser, "playlist", XmlElementReaders.PLAYLIST, playlists);
+            PlaylistsResponse response = new PlaylistsResponse(playlists);
+            response.error = error;
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<TagsResponse> TAGS = new XmlElementReader<TagsResponse>() {
+        @Override
+        public TagsResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            List<TagEntity> tags = new ArrayList<>();
+            Error error = readList(parser, "tag", XmlElementReaders.TAG_ENTITY, tags);
+            TagsResponse response = new TagsResponse(tags);
+            response.error = error;
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<HandshakeResponse> HANDSHAKE = new XmlElementReader<HandshakeResponse>() {
+        @Override
+        public HandshakeResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            HandshakeResponse response = new HandshakeResponse();
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "error":
+                        response.error = XmlElementReaders.ERROR.read(parser);
+                        break;
+                    case "auth":
+                        response.auth = readText(parser);
+                        break;
+                    case "api":
+                        response.api = parseInt(readText(parser));
+                        break;
+                    case "session_expire":
+                        response.session_expire = readText(parser);
+                        break;
+                    case "update":
+                        response.update = readText(parser);
+                        break;
+                    case "add":
+                        response.add = readText(parser);
+                        break;
+                    case "clean":
+                        response.clean = readText(parser);
+                        break;
+                    case "songs":
+                        response.songs = parseInt(readText(parser));
+                        break;
+                    case "albums":
+                        response.albums = parseInt(readText(parser));
+                        break;
+                    case "artists":
+                        response.artists = parseInt(readText(parser));
+                        break;
+                    case "playlists":
+                        response.playlists = parseInt(readText(parser));
+                        break;
+                    case "videos":
+                        response.videos = parseInt(readText(parser));
+                        break;
+                    case "catalogs":
+                        response.catalogs = parseInt(readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            if (response.error == null) {
+                require(parser, "auth", response.auth);
+            }
+            return response;
+        }
+    };
+
+    public static final XmlElementReader<PingResponse> PING = new XmlElementReader<PingResponse>() {
+        @Override
+        public PingResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            PingResponse response = new PingResponse();
+            while (nextChild(parser)) {
+                switch (parser.getName()) {
+                    case "error":
+                        response.error = XmlElementReaders.ERROR.read(parser);
+                        break;
+                    case "session_expire":
+                        response.session_expire = readText(parser);
+                        break;
+                    case "server":
+                        response.server = readText(parser);
+                        break;
+                    case "version":
+                        response.version = readText(parser);
+                        break;
+                    case "compatible":
+                        response.compatible = readText(parser);
+                        break;
+                    default:
+                        skip(parser);
+                        break;
+                }
+            }
+            if (response.error == null) {
+                require(parser, "session_expire", response.session_expire);
+                require(parser, "server", response.server);
+                require(parser, "version", response.version);
+                require(parser, "compatible", response.compatible);
+            }
+            return response;
+        }
+    };
+
+    /**
+     * the rate and tag actions only tell if they failed
+     */
+    public static final XmlElementReader<RateResponse> RATE = new XmlElementReader<RateResponse>() {
+        @Override
+        public RateResponse read(final XmlPullParser parser) throws XmlPullParserException, IOException {
+            RateResponse response = new RateResponse();
+            while (nextChild(parser)) {
+                if ("error".equals(parser.getName())) {
+                    response.error = XmlElementReaders.ERROR.read(parser);
+                } else {
+                    skip(parser);
+                }
+            }
+            return response;
+        }
+    };
+
+    private static final Map<Class<?>, XmlElementReader<?>> sReaders = new HashMap<>();
+
+    static {
+        sReaders.put(SongsResponse.class, SONGS);
+        sReaders.put(AlbumsResponse.class, ALBUMS);
+        sReaders.put(ArtistsResponse.class, ARTISTS);
+        sReaders.put(PlaylistsResponse.class, PLAYLISTS);
+        sReaders.put(TagsResponse.class, TAGS);
+        sReaders.put(HandshakeResponse.class, HANDSHAKE);
+        sReaders.put(PingResponse.class, PING);
+        sReaders.put(RateResponse.class, RATE);
+    }
+
+    /**
+     * @return the reader for the response class, null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> XmlElementReader<T> forClass(final Class<T> responseClass) {
+        return (XmlElementReader<T>) sReaders.get(responseClass);
+    }
+
+    /**
+     * the elements the response models mark as required, a response without them is not valid
+     * unless it's an error. the caller reports the exception as a ResponseParseException
+     */
+    private static void require(final XmlPullParser parser, final String elementName, final String value)
+            throws XmlPullParserException {
+        if (value == null) {
+            throw new XmlPullParserException("missing required element " + elementName, parser, null);
+        }
+    }
+
+    /**
+     * read the children of the root with the given name into the list
+     * @return the error sent instead of the list, null if none
+     */
+    private static <T> Error readList(final XmlPullParser parser, final String elementName,
+            final XmlElementReader<T> reader, final List<T> list) throws XmlPullParserException, IOException {
+        Error error = null;
+        while (nextChild(parser)) {
+            String name = parser.getName();
+            if (elementName.equals(name)) {
+                list.add(reader.read(parser));
+            } else if ("error".equals(name)) {
+                error = XmlElementReaders.ERROR.read(parser);
+            } else {
+                skip(parser);
+            }
+        }
+        return error;
+    }
+}
@@ -1,6 +1,9 @@
 package com.antoniotari.reactiveampache.utils;
 
 import java.security.MessageDigest;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
 
 /**
  * Created by antonio.tari on 5/12/16.
@@ -23,4 +26,26 @@ public class AmpacheUtils {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * parse the ISO 8601 dates sent by ampache, e.g. 2016-05-21T13:29:42+02:00
+     * @return the time in milliseconds or -1 if the date can't be parsed
+     */
+    public static long parseIsoDate(String date) {
+        if (date == null) return -1;
+        String normalized = date.trim();
+        int length = normalized.length();
+        // SimpleDateFormat wants the timezone as +0200
+        if (normalized.endsWith("Z")) {
+            normalized = normalized.substring(0, length - 1) + "+0000";
+        } else if (length > 6 && normalized.charAt(length - 3) == ':' &&
+                (normalized.charAt(length - 6) == '+' || normalized.charAt(length - 6) == '-')) {
+            normalized = normalized.substring(0, length - 3) + normalized.substring(length - 2);
+        }
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US).parse(normalized).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
 }
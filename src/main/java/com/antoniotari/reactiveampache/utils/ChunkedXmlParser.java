@@ -0,0 +1,193 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+/**
+ * parses a downloaded list response on several cores.
+ * the document is split at the start tags of the top level elements into chunks of about the same size,
+ * every chunk is wrapped in a root element and parsed on its own, the results are put back in document order
+ */
+public final class ChunkedXmlParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(UTF_8);
+    private static final byte[] CDATA_END = "]]>".getBytes(UTF_8);
+    private static final byte[] COMMENT_START = "<!--".getBytes(UTF_8);
+    private static final byte[] COMMENT_END = "-->".getBytes(UTF_8);
+    private static final byte[] CHUNK_ROOT_START = "<root>".getBytes(UTF_8);
+    private static final byte[] CHUNK_ROOT_END = "</root>".getBytes(UTF_8);
+
+    // smaller responses are parsed faster on one thread
+    public static final int MIN_PARALLEL_SIZE = 256 * 1024;
+
+    private static ExecutorService sExecutor;
+
+    private ChunkedXmlParser() {
+    }
+
+    /**
+     * pool with one thread per core used to parse the chunks
+     */
+    public static synchronized ExecutorService getDefaultExecutor() {
+        if (sExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            sExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ampache-parse-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @param xml           the whole utf-8 response
+     * @param elementName   name of the top level elements, e.g. song
+     * @param reader        the reader for the element
+     * @param chunks        max number of chunks parsed at the same time
+     * @param executor      where the chunks are parsed
+     * @return              the elements in document order
+     */
+    public static <T> List<T> parseList(final byte[] xml, final String elementName, final XmlElementReader<T> reader,
+            final int chunks, final ExecutorService executor) throws Exception {
+        List<Integer> starts = findElementStarts(xml, elementName);
+        int end = lastIndexOf(xml, ("</" + elementName + ">").getBytes(UTF_8));
+        if (chunks <= 1 || xml.length < MIN_PARALLEL_SIZE || starts.size() < chunks || end == -1) {
+            // also the path of the error responses, they have no elements.
+            // some ampache servers send 2 bytes before the actual xml
+            int documentStart = Math.max(indexOf(xml, new byte[]{'<'}, 0), 0);
+            return parseChunk(new ByteArrayInputStream(xml, documentStart, xml.length - documentStart), elementName, reader);
+        }
+        end += elementName.length() + 3;
+
+        // boundaries at the element start closest to every multiple of the chunk size
+        int firstStart = starts.get(0);
+        int chunkSize = (end - firstStart) / chunks;
+        List<Integer> boundaries = new ArrayList<>(chunks + 1);
+        boundaries.add(firstStart);
+        int next = 0;
+        for (int i = 1; i < chunks; i++) {
+            int target = firstStart + chunkSize * i;
+            while (next < starts.size() && starts.get(next) < target) {
+                next++;
+            }
+            if (next < starts.size() && starts.get(next) > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(starts.get(next));
+            }
+        }
+        boundaries.add(end);
+
+        List<Future<List<T>>> futures = new ArrayList<>(boundaries.size() - 1);
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            final int from = boundaries.get(i);
+            final int to = boundaries.get(i + 1);
+            futures.add(executor.submit(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws Exception {
+                    InputStream chunk = new SequenceInputStream(new SequenceInputStream(
+                            new ByteArrayInputStream(CHUNK_ROOT_START),
+                            new ByteArrayInputStream(xml, from, to - from)),
+                            new ByteArrayInputStream(CHUNK_ROOT_END));
+                    return parseChunk(chunk, elementName, reader);
+                }
+            }));
+        }
+
+        List<T> result = new ArrayList<>(starts.size());
+        try {
+            for (Future<List<T>> future : futures) {
+                result.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<List<T>> future : futures) {
+                future.cancel(true);
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return result;
+    }
+
+    private static <T> List<T> parseChunk(final InputStream inputStream, final String elementName,
+            final XmlElementReader<T> reader) throws Exception {
+        final List<T> list = new ArrayList<>();
+        XmlStreamParser.parseList(inputStream, elementName, reader, new ElementListener<T>() {
+            @Override
+            public void onElement(final T element) {
+                list.add(element);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * offsets of the start tags of the elements, skipping the CDATA sections and the comments
+     */
+    public static List<Integer> findElementStarts(final byte[] xml, final String elementName) {
+        byte[] tag = ("<" + elementName).getBytes(UTF_8);
+        List<Integer> starts = new ArrayList<>();
+        int i = 0;
+        while (i < xml.length) {
+            if (xml[i] != '<') {
+                i++;
+            } else if (matches(xml, i, CDATA_START)) {
+                int cdataEnd = indexOf(xml, CDATA_END, i + CDATA_START.length);
+                if (cdataEnd == -1) break;
+                i = cdataEnd + CDATA_END.length;
+            } else if (matches(xml, i, COMMENT_START)) {
+                int commentEnd = indexOf(xml, COMMENT_END, i + COMMENT_START.length);
+                if (commentEnd == -1) break;
+                i = commentEnd + COMMENT_END.length;
+            } else if (matches(xml, i, tag) && i + tag.length < xml.length && isTagNameEnd(xml[i + tag.length])) {
+                starts.add(i);
+                i += tag.length;
+            } else {
+                i++;
+            }
+        }
+        return starts;
+    }
+
+    private static boolean isTagNameEnd(final byte b) {
+        return b == '>' || b == ' ' || b == '/' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean matches(final byte[] xml, final int offset, final byte[] pattern) {
+        if (offset + pattern.length > xml.length) return false;
+        for (int j = 0; j < pattern.length; j++) {
+            if (xml[offset + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(final byte[] xml, final byte[] pattern, final int from) {
+        for (int i = from; i <= xml.length - pattern.length; i++) {
+            if (matches(xml, i, pattern)) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(final byte[] xml, final byte[] pattern) {
+        for (int i = xml.length - pattern.length; i >= 0; i--) {
+            if (matches(xml, i, pattern)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,91 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.models.Error;
+import com.antoniotari.reactiveampache.models.JsonElementReader;
+import com.antoniotari.reactiveampache.models.JsonElementReaders;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * parses the list responses of json.server.php straight from the response stream.
+ * lists come as {"song": [...]}, single items can also come as the object itself,
+ * errors come as {"error": {...}}
+ */
+public final class JsonStreamParser {
+
+    private JsonStreamParser() {
+    }
+
+    /**
+     * @param inputStream   the json stream
+     * @param elementName   name of the list, e.g. song
+     * @param reader        the reader for the elements of the list
+     * @param listener      called for every decoded element
+     * @return              the number of elements read
+     */
+    public static <T> int parseList(final InputStream inputStream, final String elementName,
+            final JsonElementReader<T> reader, final ElementListener<T> listener) throws Exception {
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        jsonReader.setLenient(true);
+
+        int count = 0;
+        if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+            return readArray(jsonReader, reader, listener);
+        }
+
+        T single = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (elementName.equals(name)) {
+                if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    count += readArray(jsonReader, reader, listener);
+                } else {
+                    T element = JsonElementReaders.readObject(jsonReader, reader);
+                    if (element != null) {
+                        listener.onElement(element);
+                        count++;
+                    }
+                }
+            } else if ("error".equals(name)) {
+                Error error = JsonElementReaders.readObject(jsonReader, JsonElementReaders.ERROR);
+                throw new AmpacheApiException(error == null ? new Error() : error);
+            } else if ("total_count".equals(name) || "md5".equals(name)) {
+                jsonReader.skipValue();
+            } else {
+                // a single item sent as the whole response
+                if (single == null) {
+                    single = reader.newElement();
+                }
+                reader.readField(single, name, jsonReader);
+            }
+        }
+        jsonReader.endObject();
+
+        if (single != null) {
+            listener.onElement(single);
+            count++;
+        }
+        return count;
+    }
+
+    private static <T> int readArray(final JsonReader jsonReader, final JsonElementReader<T> reader,
+            final ElementListener<T> listener) throws Exception {
+        int count = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            T element = JsonElementReaders.readObject(jsonReader, reader);
+            if (element != null) {
+                listener.onElement(element);
+                count++;
+            }
+        }
+        jsonReader.endArray();
+        return count;
+    }
+}
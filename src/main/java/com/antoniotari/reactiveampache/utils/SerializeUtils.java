@@ -3,38 +3,55 @@ package com.antoniotari.reactiveampache.utils;
 import java.io.Reader;
 import java.io.StringReader;
 
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+import com.antoniotari.reactiveampache.models.XmlResponseReaders;
 import com.google.gson.Gson;
 
 import org.simpleframework.xml.Serializer;
 import org.simpleframework.xml.core.Persister;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Created by antonio.tari on 5/19/16.
  */
 public class SerializeUtils {
 
+    // the persister caches the schema of every class it reads, it's thread safe
+    private static final Serializer sSerializer = new Persister();
+
     public <T> T fromXml(String xmlString,Class<T> classOfT) throws Exception {
-        // remove all characters before the beginning of the xml string
-        // some ampache servers send 2 bytes before the actual xml
-        String firstLetter = String.valueOf(xmlString.charAt(0));
-        while (!firstLetter.equals("<")) {
-            xmlString = xmlString.substring(1);
-            firstLetter = String.valueOf(xmlString.charAt(0));
-        }
+        return fromXml(new StringReader(xmlString), classOfT);
+    }
 
-        String lastLetter = String.valueOf(xmlString.charAt(xmlString.length()-1));
-        while (!lastLetter.equals(">")) {
-            xmlString = xmlString.substring(0,xmlString.length()-1);
-            lastLetter = String.valueOf(xmlString.charAt(xmlString.length()-1));
+    /**
+     * parse the xml while it's read, the characters before and after the xml and the bare &
+     * are cleaned up on the fly by XmlSanitizingReader
+     */
+    public <T> T fromXml(Reader xmlReader, Class<T> classOfT) throws Exception {
+        Reader reader = new XmlSanitizingReader(xmlReader);
+        XmlElementReader<T> responseReader = XmlResponseReaders.forClass(classOfT);
+        if (responseReader != null) {
+            return responseReader.read(newRootParser(reader));
         }
+        // no reader for this class, fall back to reflection
+        return sSerializer.read(classOfT, reader, false);
+    }
 
-        // simple parser will fail when it finds & surrounded by spaces
-        xmlString = xmlString.replace(" & "," &amp; ");
-//        xmlString = xmlString.replace("?","&#63;");
-
-        Serializer serializer = new Persister();
-        Reader reader = new StringReader(xmlString);
-        return serializer.read(classOfT, reader, false);
+    /**
+     * @return a pull parser positioned on the root element
+     */
+    private static XmlPullParser newRootParser(final Reader reader) throws Exception {
+        XmlPullParser parser = XmlStreamParser.newPullParser();
+        parser.setInput(reader);
+        int event = parser.getEventType();
+        while (event != XmlPullParser.START_TAG) {
+            if (event == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("empty response");
+            }
+            event = parser.next();
+        }
+        return parser;
     }
 
     public <T> T fromJson(String jsonString,Class<T> classOfT) {
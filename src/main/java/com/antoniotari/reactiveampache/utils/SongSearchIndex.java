@@ -0,0 +1,215 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.Tag;
+
+/**
+ * inverted index over the title, artist, album and tags of the songs, to search them without the server.
+ * the words are compared without case and accents, every word of the query must be a word of the song
+ * or the beginning of one. a word of the title counts more than a word of the artist or the album,
+ * which counts more than a tag, and a whole word counts more than a prefix
+ */
+public class SongSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int WEIGHT_TITLE = 4;
+    private static final int WEIGHT_ARTIST = 2;
+    private static final int WEIGHT_ALBUM = 2;
+    private static final int WEIGHT_TAG = 1;
+    // a whole word scores this many times the same word matched by prefix
+    private static final int EXACT_FACTOR = 2;
+
+    // word -> id of the song -> weight of the word in the song
+    private final TreeMap<String, Map<String, Integer>> mPostings = new TreeMap<>();
+    private final Map<String, Song> mSongs = new HashMap<>();
+    private final Map<String, Set<String>> mSongWords = new HashMap<>();
+    private final Map<String, String> mSortTitles = new HashMap<>();
+
+    /**
+     * add the songs, or update the songs already in the index with the same id
+     */
+    public synchronized void putSongs(final Collection<Song> songs) {
+        if (songs == null) return;
+        for (Song song : songs) {
+            if (song == null || song.getId() == null) continue;
+            removeSong(song.getId());
+            Map<String, Integer> words = new HashMap<>();
+            addWords(words, song.getTitle(), WEIGHT_TITLE);
+            if (song.getArtist() != null) {
+                addWords(words, song.getArtist().getName(), WEIGHT_ARTIST);
+            }
+            if (song.getAlbum() != null) {
+                addWords(words, song.getAlbum().getName(), WEIGHT_ALBUM);
+            }
+            if (song.getTag() != null) {
+                for (Tag tag : song.getTag()) {
+                    addWords(words, tag.getTag(), WEIGHT_TAG);
+                }
+            }
+            for (Map.Entry<String, Integer> word : words.entrySet()) {
+                Map<String, Integer> posting = mPostings.get(word.getKey());
+                if (posting == null) {
+                    posting = new HashMap<>();
+                    mPostings.put(word.getKey(), posting);
+                }
+                posting.put(song.getId(), word.getValue());
+            }
+            mSongs.put(song.getId(), song);
+            mSongWords.put(song.getId(), words.keySet());
+            mSortTitles.put(song.getId(), song.getTitle() == null ? "" : normalize(song.getTitle()));
+        }
+    }
+
+    /**
+     * replace the whole index, e.g. after a full sync
+     */
+    public synchronized void replaceSongs(final Collection<Song> songs) {
+        clear();
+        putSongs(songs);
+    }
+
+    public synchronized void removeSong(final String songId) {
+        Set<String> words = mSongWords.remove(songId);
+        if (words == null) return;
+        for (String word : words) {
+            Map<String, Integer> posting = mPostings.get(word);
+            if (posting == null) continue;
+            posting.remove(songId);
+            if (posting.isEmpty()) {
+                mPostings.remove(word);
+            }
+        }
+        mSongs.remove(songId);
+        mSortTitles.remove(songId);
+    }
+
+    public synchronized void clear() {
+        mPostings.clear();
+        mSongs.clear();
+        mSongWords.clear();
+        mSortTitles.clear();
+    }
+
+    public synchronized int size() {
+        return mSongs.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSongs.isEmpty();
+    }
+
+    /**
+     * @param query the words to look for, in any order
+     * @param limit max number of songs returned, 0 for all of them
+     * @return the songs matching every word of the query, the most relevant first
+     */
+    public synchronized List<Song> search(final String query, final int limit) {
+        List<String> queryWords = tokenize(query);
+        if (queryWords.isEmpty()) return new ArrayList<>();
+
+        Map<String, Integer> scores = null;
+        for (String queryWord : queryWords) {
+            Map<String, Integer> matches = match(queryWord);
+            if (scores == null) {
+                scores = matches;
+            } else {
+                // every word of the query must match
+                Map<String, Integer> both = new HashMap<>();
+                for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                    Integer score = matches.get(entry.getKey());
+                    if (score != null) {
+                        both.put(entry.getKey(), entry.getValue() + score);
+                    }
+                }
+                scores = both;
+            }
+            if (scores.isEmpty()) return new ArrayList<>();
+        }
+
+        final Map<String, Integer> finalScores = scores;
+        List<String> ids = new ArrayList<>(scores.keySet());
+        Collections.sort(ids, new Comparator<String>() {
+            @Override
+            public int compare(final String lhs, final String rhs) {
+                int byScore = finalScores.get(rhs).compareTo(finalScores.get(lhs));
+                if (byScore != 0) return byScore;
+                int byTitle = mSortTitles.get(lhs).compareTo(mSortTitles.get(rhs));
+                return byTitle != 0 ? byTitle : lhs.compareTo(rhs);
+            }
+        });
+        int count = limit > 0 ? Math.min(limit, ids.size()) : ids.size();
+        List<Song> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(mSongs.get(ids.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the score of every song with a word starting with the given one
+     */
+    private Map<String, Integer> match(final String queryWord) {
+        Map<String, Integer> matches = new HashMap<>();
+        // the words of the index sorted after the query word and starting with it
+        for (Map.Entry<String, Map<String, Integer>> word :
+                mPostings.subMap(queryWord, true, queryWord + Character.MAX_VALUE, false).entrySet()) {
+            boolean exact = word.getKey().equals(queryWord);
+            for (Map.Entry<String, Integer> posting : word.getValue().entrySet()) {
+                int score = exact ? posting.getValue() * EXACT_FACTOR : posting.getValue();
+                Integer previous = matches.get(posting.getKey());
+                if (previous == null || previous < score) {
+                    matches.put(posting.getKey(), score);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static void addWords(final Map<String, Integer> words, final String text, final int weight) {
+        for (String word : tokenize(text)) {
+            Integer previous = words.get(word);
+            if (previous == null || previous < weight) {
+                words.put(word, weight);
+            }
+        }
+    }
+
+    /**
+     * lower case, without accents
+     */
+    public static String normalize(final String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the normalized words of the text
+     */
+    public static List<String> tokenize(final String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        Set<String> seen = new HashSet<>();
+        for (String word : SEPARATORS.split(normalize(text))) {
+            if (!word.isEmpty() && seen.add(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,105 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+/**
+ * parses a downloaded list one element at a time, an element that can't be parsed
+ * is reported to the listener and left out of the list instead of failing the whole list
+ */
+public final class TolerantXmlParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] ROOT_START = "<root>".getBytes(UTF_8);
+    private static final byte[] ROOT_END = "</root>".getBytes(UTF_8);
+
+    public interface ParseErrorListener {
+        /**
+         * @param elementName   name of the element that was skipped, e.g. song
+         * @param index         position of the element in the response
+         * @param error         why it could not be parsed
+         */
+        void onParseError(String elementName, int index, Exception error);
+    }
+
+    private TolerantXmlParser() {
+    }
+
+    /**
+     * @param xml           the whole utf-8 response
+     * @param elementName   name of the top level elements, e.g. song
+     * @param reader        the reader for the element
+     * @param listener      told about every element that was skipped
+     * @return              the elements that could be parsed, in document order
+     */
+    public static <T> List<T> parseList(final byte[] xml, final String elementName, final XmlElementReader<T> reader,
+            final ParseErrorListener listener) throws Exception {
+        List<Integer> starts = ChunkedXmlParser.findElementStarts(xml, elementName);
+        final List<T> list = new ArrayList<>(starts.size());
+        ElementListener<T> collector = new ElementListener<T>() {
+            @Override
+            public void onElement(final T element) {
+                list.add(element);
+            }
+        };
+        if (starts.isEmpty()) {
+            // nothing to skip, it's an error response or an empty list
+            int documentStart = Math.max(indexOf(xml, (byte) '<', 0), 0);
+            XmlStreamParser.parseList(new ByteArrayInputStream(xml, documentStart, xml.length - documentStart),
+                    elementName, reader, collector);
+            return list;
+        }
+
+        byte[] closing = ("</" + elementName + ">").getBytes(UTF_8);
+        for (int i = 0; i < starts.size(); i++) {
+            int from = starts.get(i);
+            int limit = i + 1 < starts.size() ? starts.get(i + 1) : xml.length;
+            int end = lastIndexOf(xml, closing, from, limit);
+            int to = end == -1 ? limit : end + closing.length;
+            InputStream element = new SequenceInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(ROOT_START),
+                    new ByteArrayInputStream(xml, from, to - from)),
+                    new ByteArrayInputStream(ROOT_END));
+            int size = list.size();
+            try {
+                XmlStreamParser.parseList(element, elementName, reader, collector);
+            } catch (AmpacheApiException e) {
+                throw e;
+            } catch (Exception e) {
+                // drop whatever the broken element added before failing
+                while (list.size() > size) {
+                    list.remove(list.size() - 1);
+                }
+                Log.error(e);
+                listener.onParseError(elementName, i, e);
+            }
+        }
+        return list;
+    }
+
+    private static int indexOf(final byte[] xml, final byte b, final int from) {
+        for (int i = from; i < xml.length; i++) {
+            if (xml[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(final byte[] xml, final byte[] pattern, final int from, final int limit) {
+        for (int i = limit - pattern.length; i >= from; i--) {
+            boolean matches = true;
+            for (int j = 0; j < pattern.length && matches; j++) {
+                matches = xml[i + j] == pattern[j];
+            }
+            if (matches) return i;
+        }
+        return -1;
+    }
+}
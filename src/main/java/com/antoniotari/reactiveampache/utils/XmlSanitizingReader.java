@@ -0,0 +1,197 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * cleans up the xml sent by ampache while it's read, without copying the document:
+ * skips the characters before the first &lt; (some servers send 2 bytes before the xml),
+ * drops the characters after the last &gt; and escapes the bare &amp; that are not
+ * the start of an entity, except inside CDATA sections
+ */
+public class XmlSanitizingReader extends FilterReader {
+
+    private static final String CDATA_START = "<![CDATA[";
+    private static final String CDATA_END = "]]>";
+    // longest entity looked for after a &, e.g. #x10FFFF;
+    private static final int MAX_ENTITY_LENGTH = 10;
+    static final int BUFFER_SIZE = 8192;
+
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPosition;
+    private int mLimit;
+    private boolean mEndOfInput;
+
+    // sanitized characters ready to be read
+    private final StringBuilder mOutput = new StringBuilder();
+    private int mOutputPosition;
+    // characters after the last >, only released when another > comes
+    private final StringBuilder mPending = new StringBuilder();
+
+    private boolean mStarted;
+    private boolean mInCdata;
+    private int mCdataMatch;
+
+    public XmlSanitizingReader(final Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] single = new char[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0];
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        while (mOutput.length() - mOutputPosition == 0) {
+            mOutput.setLength(0);
+            mOutputPosition = 0;
+            if (!sanitizeMore()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, mOutput.length() - mOutputPosition);
+        mOutput.getChars(mOutputPosition, mOutputPosition + count, cbuf, off);
+        mOutputPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        char[] skipped = new char[(int) Math.min(n, BUFFER_SIZE)];
+        long total = 0;
+        while (total < n) {
+            int read = read(skipped, 0, (int) Math.min(n - total, skipped.length));
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return mOutput.length() - mOutputPosition > 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /**
+     * sanitize the next chunk of the input
+     * @return false at the end of the input
+     */
+    private boolean sanitizeMore() throws IOException {
+        if (!ensure(1)) {
+            // whatever follows the last > is not xml
+            mPending.setLength(0);
+            return false;
+        }
+        // the lookahead of an entity can move the characters in the buffer, always compare with the current limit
+        while (mPosition < mLimit && mOutput.length() < BUFFER_SIZE) {
+            char c = mBuffer[mPosition++];
+            if (!mStarted) {
+                if (c != '<') continue;
+                mStarted = true;
+            }
+
+            if (c == '&' && !mInCdata && !isEntity()) {
+                mPending.append("&amp;");
+            } else {
+                mPending.append(c);
+            }
+            trackCdata(c);
+
+            if (c == '>') {
+                mOutput.append(mPending);
+                mPending.setLength(0);
+            }
+        }
+        return true;
+    }
+
+    private void trackCdata(final char c) {
+        String marker = mInCdata ? CDATA_END : CDATA_START;
+        if (c == marker.charAt(mCdataMatch)) {
+            mCdataMatch++;
+            if (mCdataMatch == marker.length()) {
+                mInCdata = !mInCdata;
+                mCdataMatch = 0;
+            }
+        } else {
+            // a ] followed by ]]> must still match the end of the section
+            mCdataMatch = c == marker.charAt(0) ? 1 : 0;
+        }
+    }
+
+    /**
+     * @return true if the characters after the & that was just read form an entity, e.g. &amp;amp; or &amp;#39;
+     */
+    private boolean isEntity() throws IOException {
+        ensure(MAX_ENTITY_LENGTH);
+        int available = Math.min(MAX_ENTITY_LENGTH, mLimit - mPosition);
+        if (available == 0) return false;
+
+        int i = mPosition;
+        int max = mPosition + available;
+        if (mBuffer[i] == '#') {
+            i++;
+            boolean hex = i < max && (mBuffer[i] == 'x' || mBuffer[i] == 'X');
+            if (hex) i++;
+            int digits = 0;
+            while (i < max && (hex ? isHexDigit(mBuffer[i]) : Character.isDigit(mBuffer[i]))) {
+                i++;
+                digits++;
+            }
+            return digits > 0 && i < max && mBuffer[i] == ';';
+        }
+        if (!Character.isLetter(mBuffer[i])) return false;
+        while (i < max && Character.isLetterOrDigit(mBuffer[i])) {
+            i++;
+        }
+        return i < max && mBuffer[i] == ';';
+    }
+
+    private static boolean isHexDigit(final char c) {
+        return Character.isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * make at least count characters available after the position, unless the input ends first
+     * @return false if there are no characters left
+     */
+    private boolean ensure(final int count) throws IOException {
+        if (mLimit - mPosition >= count) return true;
+        if (!mEndOfInput) {
+            if (mPosition > 0) {
+                System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+                mLimit -= mPosition;
+                mPosition = 0;
+            }
+            while (mLimit - mPosition < count && !mEndOfInput) {
+                int read = in.read(mBuffer, mLimit, mBuffer.length - mLimit);
+                if (read == -1) {
+                    mEndOfInput = true;
+                } else {
+                    mLimit += read;
+                }
+            }
+        }
+        return mLimit - mPosition > 0;
+    }
+}
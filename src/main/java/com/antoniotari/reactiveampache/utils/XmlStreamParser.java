@@ -0,0 +1,81 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.InputStream;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+import com.antoniotari.reactiveampache.models.XmlElementReaders;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * parses list responses straight from the response stream with a pull parser,
+ * every element is handed to the listener as soon as it's decoded so the whole
+ * document is never held in memory
+ */
+public final class XmlStreamParser {
+
+    // lets the parser go on when it finds a bare & inside a text node
+    private static final String FEATURE_RELAXED = "http://xmlpull.org/v1/doc/features.html#relaxed";
+
+    private static XmlPullParserFactory sFactory;
+
+    public interface ElementListener<T> {
+        void onElement(T element) throws Exception;
+    }
+
+    private XmlStreamParser() {
+    }
+
+    /**
+     * @return a new pull parser that tolerates a bare & when it supports it.
+     * the parser comes from the xmlpull factory, on android it's the same parser as Xml.newPullParser
+     */
+    static XmlPullParser newPullParser() throws XmlPullParserException {
+        XmlPullParser parser = getFactory().newPullParser();
+        try {
+            parser.setFeature(FEATURE_RELAXED, true);
+        } catch (Exception e) {
+            // not supported by this parser, parse strictly
+        }
+        return parser;
+    }
+
+    private static synchronized XmlPullParserFactory getFactory() throws XmlPullParserException {
+        if (sFactory == null) {
+            sFactory = XmlPullParserFactory.newInstance();
+        }
+        return sFactory;
+    }
+
+    /**
+     * @param inputStream   the xml stream, must start with the xml document
+     * @param elementName   name of the elements to read, e.g. song
+     * @param reader        the reader for the element
+     * @param listener      called for every decoded element
+     * @return              the number of elements read
+     */
+    public static <T> int parseList(final InputStream inputStream, final String elementName,
+            final XmlElementReader<T> reader, final ElementListener<T> listener) throws Exception {
+        XmlPullParser parser = newPullParser();
+        parser.setInput(inputStream, "UTF-8");
+
+        int count = 0;
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if (elementName.equals(name)) {
+                    listener.onElement(reader.read(parser));
+                    count++;
+                } else if ("error".equals(name)) {
+                    throw new AmpacheApiException(XmlElementReaders.ERROR.read(parser));
+                }
+            }
+            event = parser.next();
+        }
+        return count;
+    }
+}
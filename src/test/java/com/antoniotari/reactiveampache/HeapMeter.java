@@ -0,0 +1,36 @@
+package com.antoniotari.reactiveampache;
+
+/**
+ * rough measure of the heap used, for the tests comparing the memory of two representations.
+ * keep the objects measured reachable until after usedMemory is called
+ */
+public final class HeapMeter {
+
+    private HeapMeter() {
+    }
+
+    /**
+     * @return bytes of heap in use after the garbage collector ran until the value settled
+     */
+    public static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            System.runFinalization();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (Math.abs(used - now) < 64 * 1024) return now;
+            used = now;
+        }
+        return used;
+    }
+
+    public static String megabytes(final long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
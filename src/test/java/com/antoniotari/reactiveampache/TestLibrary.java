@@ -0,0 +1,92 @@
+package com.antoniotari.reactiveampache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+
+/**
+ * synthetic ampache responses shaped like a real library, for the tests and the measurements
+ */
+public final class TestLibrary {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private TestLibrary() {
+    }
+
+    /**
+     * @param songs             number of songs
+     * @param songsPerAlbum     songs of every album
+     * @param albumsPerArtist   albums of every artist
+     * @return a songs response
+     */
+    public static byte[] songsXml(final int songs, final int songsPerAlbum, final int albumsPerArtist) {
+        StringBuilder builder = new StringBuilder(songs * 1200);
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<root>\n");
+        for (int i = 0; i < songs; i++) {
+            appendSong(builder, i, songsPerAlbum, albumsPerArtist);
+        }
+        builder.append("</root>\n");
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * the same response as songsXml, generated while it's read so a big library doesn't have to fit in memory as text
+     */
+    public static InputStream songsStream(final int songs, final int songsPerAlbum, final int albumsPerArtist) {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int mNext = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return mNext <= songs;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                StringBuilder builder = new StringBuilder(1200);
+                if (mNext == -1) {
+                    builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<root>\n");
+                } else if (mNext == songs) {
+                    builder.append("</root>\n");
+                } else {
+                    appendSong(builder, mNext, songsPerAlbum, albumsPerArtist);
+                }
+                mNext++;
+                return new ByteArrayInputStream(builder.toString().getBytes(UTF_8));
+            }
+        });
+    }
+
+    public static void appendSong(final StringBuilder builder, final int i, final int songsPerAlbum, final int albumsPerArtist) {
+        int album = i / songsPerAlbum;
+        int artist = album / albumsPerArtist;
+        int tag = artist % 40;
+        builder.append("<song id=\"").append(i + 1).append("\">\n")
+                .append("  <title><![CDATA[Song number ").append(i).append(" & friends]]></title>\n")
+                .append("  <artist id=\"").append(artist + 1).append("\"><![CDATA[Artist ").append(artist).append("]]></artist>\n")
+                .append("  <album id=\"").append(album + 1).append("\"><![CDATA[Album ").append(album).append("]]></album>\n")
+                .append("  <tag id=\"").append(tag + 1).append("\" count=\"3\"><![CDATA[Genre ").append(tag).append("]]></tag>\n")
+                .append("  <track>").append(i % songsPerAlbum + 1).append("</track>\n")
+                .append("  <time>").append(180 + i % 120).append("</time>\n")
+                .append("  <year>").append(1960 + artist % 60).append("</year>\n")
+                .append("  <bitrate>320000</bitrate>\n")
+                .append("  <mode>cbr</mode>\n")
+                .append("  <mime>audio/mpeg</mime>\n")
+                .append("  <url><![CDATA[https://music.example.com/play/index.php?ssid=0123456789abcdef0123456789abcdef&type=song&oid=")
+                .append(i + 1).append("&uid=2&name=Artist%20").append(artist).append("%20-%20Song%20number%20").append(i)
+                .append(".mp3]]></url>\n")
+                .append("  <size>").append(7000000 + i).append("</size>\n")
+                .append("  <mbid>0f0e0d0c-0b0a-0908-0706-").append(String.format("%012d", i)).append("</mbid>\n")
+                .append("  <album_mbid>1f1e1d1c-1b1a-1918-1716-").append(String.format("%012d", album)).append("</album_mbid>\n")
+                .append("  <artist_mbid>2f2e2d2c-2b2a-2928-2726-").append(String.format("%012d", artist)).append("</artist_mbid>\n")
+                .append("  <art><![CDATA[https://music.example.com/image.php?object_id=").append(album + 1)
+                .append("&object_type=album&auth=0123456789abcdef0123456789abcdef]]></art>\n")
+                .append("  <preciserating>3</preciserating>\n")
+                .append("  <rating>3</rating>\n")
+                .append("  <averagerating>2.5</averagerating>\n")
+                .append("</song>\n");
+    }
+}
@@ -0,0 +1,95 @@
+package com.antoniotari.reactiveampache.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private static CircuitBreaker open(final long openMillis) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", openMillis);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onFailure();
+        }
+        return circuitBreaker;
+    }
+
+    @Test
+    public void failures_openAfterThreshold() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 30000);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+            assertEquals(CircuitBreaker.ALLOWED, circuitBreaker.acquire());
+        }
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void success_resetsFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 30000);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        circuitBreaker.onSuccess();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertFalse(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.ALLOWED, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void open_singleTrialAfterOpenTime() {
+        CircuitBreaker circuitBreaker = open(0);
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+        // half open, the other requests wait for the trial
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void trialSuccess_closes() {
+        CircuitBreaker circuitBreaker = open(0);
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+        circuitBreaker.onSuccess();
+        assertFalse(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.ALLOWED, circuitBreaker.acquire());
+        assertEquals(CircuitBreaker.ALLOWED, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void trialFailure_staysOpenAndReleasesTrial() {
+        CircuitBreaker circuitBreaker = open(0);
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void trialFailure_opensForAnotherOpenTime() {
+        CircuitBreaker circuitBreaker = open(30000);
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void trialReleased_nextRequestIsTrial() {
+        CircuitBreaker circuitBreaker = open(0);
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+        circuitBreaker.releaseTrial();
+        // neither a success nor a failure
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void forServer_oneBreakerPerServer() {
+        assertSame(CircuitBreaker.forServer("https://a.example.com"), CircuitBreaker.forServer("https://a.example.com"));
+        assertNotSame(CircuitBreaker.forServer("https://a.example.com"), CircuitBreaker.forServer("https://b.example.com"));
+        assertSame(CircuitBreaker.forServer(null), CircuitBreaker.forServer(""));
+    }
+}
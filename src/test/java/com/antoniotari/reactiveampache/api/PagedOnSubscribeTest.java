@@ -0,0 +1,191 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.antoniotari.reactiveampache.models.CatalogPage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+public class PagedOnSubscribeTest {
+
+    private final ExecutorService mBulkExecutor = Executors.newFixedThreadPool(2);
+    private final Scheduler mBulk = Schedulers.from(mBulkExecutor);
+
+    @After
+    public void tearDown() {
+        mBulkExecutor.shutdownNow();
+    }
+
+    /**
+     * a catalog of the numbers from 0 to size - 1
+     */
+    private Observable<CatalogPage<Integer>> pages(final int size, final int pageSize, final AtomicInteger fetches,
+            final int failAt) {
+        return pages(size, pageSize, fetches, failAt, Schedulers.newThread());
+    }
+
+    private Observable<CatalogPage<Integer>> pages(final int size, final int pageSize, final AtomicInteger fetches,
+            final int failAt, final Scheduler delivery) {
+        return Observable.create(new PagedOnSubscribe<Integer>(pageSize, mBulk, delivery) {
+            @Override
+            int total() {
+                return size;
+            }
+
+            @Override
+            List<Integer> fetch(final int offset, final int limit) throws Exception {
+                if (fetches.incrementAndGet() == failAt) throw new IOException("failed");
+                List<Integer> items = new ArrayList<>();
+                for (int i = offset; i < Math.min(offset + limit, size); i++) {
+                    items.add(i);
+                }
+                return items;
+            }
+
+            @Override
+            void onLastPage() {
+            }
+        });
+    }
+
+    private static class RequestingSubscriber extends Subscriber<CatalogPage<Integer>> {
+        final List<CatalogPage<Integer>> pages = new ArrayList<>();
+        private final int mInitialRequest;
+
+        RequestingSubscriber(final int initialRequest) {
+            mInitialRequest = initialRequest;
+        }
+
+        @Override
+        public void onStart() {
+            request(mInitialRequest);
+        }
+
+        void requestMore(final int n) {
+            request(n);
+        }
+
+        @Override
+        public void onNext(final CatalogPage<Integer> page) {
+            synchronized (pages) {
+                pages.add(page);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+        }
+    }
+
+    @Test
+    public void requestOnePage_fetchesOnePage() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        RequestingSubscriber subscriber = new RequestingSubscriber(1);
+        pages(100, 10, fetches, 0).subscribe(subscriber);
+        Thread.sleep(300);
+        assertEquals(1, fetches.get());
+        assertEquals(1, subscriber.pages.size());
+        assertEquals(0, subscriber.pages.get(0).getOffset());
+
+        subscriber.requestMore(2);
+        Thread.sleep(300);
+        assertEquals(3, fetches.get());
+        assertEquals(3, subscriber.pages.size());
+        assertEquals(20, subscriber.pages.get(2).getOffset());
+        subscriber.unsubscribe();
+    }
+
+    @Test
+    public void requestAll_moreThanObserveOnBuffer_completesInOrder() {
+        AtomicInteger fetches = new AtomicInteger();
+        TestSubscriber<CatalogPage<Integer>> subscriber = new TestSubscriber<>();
+        pages(3000, 1, fetches, 0).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(20, TimeUnit.SECONDS);
+        assertEquals(1, subscriber.getOnCompletedEvents().size());
+        List<CatalogPage<Integer>> pages = subscriber.getOnNextEvents();
+        // the empty page after the last full one is not emitted
+        assertEquals(3000, pages.size());
+        assertEquals(3001, fetches.get());
+        for (int i = 0; i < pages.size(); i++) {
+            assertEquals(i, pages.get(i).getOffset());
+            assertEquals(i, (int) pages.get(i).getItems().get(0));
+            assertEquals(3000, pages.get(i).getTotal());
+        }
+    }
+
+    @Test
+    public void deliveredOnRequestThread_completes() {
+        TestSubscriber<CatalogPage<Integer>> subscriber = new TestSubscriber<>();
+        pages(2000, 1, new AtomicInteger(), 0, Schedulers.immediate()).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(20, TimeUnit.SECONDS);
+        assertEquals(2000, subscriber.getOnNextEvents().size());
+        assertEquals(1, subscriber.getOnCompletedEvents().size());
+    }
+
+    @Test
+    public void lastPageShort_isLast() {
+        TestSubscriber<CatalogPage<Integer>> subscriber = new TestSubscriber<>();
+        pages(25, 10, new AtomicInteger(), 0).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        List<CatalogPage<Integer>> pages = subscriber.getOnNextEvents();
+        assertEquals(3, pages.size());
+        assertFalse(pages.get(1).isLast());
+        assertTrue(pages.get(2).isLast());
+        assertEquals(5, pages.get(2).getItems().size());
+    }
+
+    @Test
+    public void emptyCatalog_oneEmptyPage() {
+        TestSubscriber<CatalogPage<Integer>> subscriber = new TestSubscriber<>();
+        pages(0, 10, new AtomicInteger(), 0).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(1, subscriber.getOnNextEvents().size());
+        assertTrue(subscriber.getOnNextEvents().get(0).isLast());
+        assertEquals(1, subscriber.getOnCompletedEvents().size());
+    }
+
+    @Test
+    public void fetchFails_error() {
+        TestSubscriber<CatalogPage<Integer>> subscriber = new TestSubscriber<>();
+        pages(100, 10, new AtomicInteger(), 3).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(2, subscriber.getOnNextEvents().size());
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+    }
+
+    @Test
+    public void unsubscribed_stopsFetching() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        RequestingSubscriber subscriber = new RequestingSubscriber(1);
+        pages(100, 10, fetches, 0).subscribe(subscriber);
+        Thread.sleep(200);
+        subscriber.unsubscribe();
+        subscriber.requestMore(5);
+        Thread.sleep(200);
+        assertEquals(1, fetches.get());
+    }
+}
@@ -0,0 +1,59 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.SongsResponse;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponseMemoTest {
+
+    private static final byte[] DIGEST = {1, 2, 3};
+
+    @Test
+    public void get_sameDigest_returnsCopyWithSameSongs() throws Exception {
+        ResponseMemo memo = new ResponseMemo();
+        memo.setMaxEntries(2);
+        Song song = new Song();
+        memo.put("songs", DIGEST, new SongsResponse(new ArrayList<>(Arrays.asList(song))));
+
+        SongsResponse first = memo.get("songs", DIGEST);
+        SongsResponse second = memo.get("songs", DIGEST);
+        assertNotSame(first, second);
+        assertNotSame(first.getSongs(), second.getSongs());
+        assertSame(song, second.getSongs().get(0));
+    }
+
+    @Test
+    public void get_afterCallerChangedList_returnsStoredList() throws Exception {
+        ResponseMemo memo = new ResponseMemo();
+        memo.setMaxEntries(2);
+        List<Song> songs = new ArrayList<>(Arrays.asList(new Song(), new Song()));
+        memo.put("songs", DIGEST, new SongsResponse(songs));
+        songs.clear();
+
+        SongsResponse first = memo.get("songs", DIGEST);
+        first.getSongs().remove(0);
+        SongsResponse second = memo.get("songs", DIGEST);
+        assertEquals(2, second.getSongs().size());
+    }
+
+    @Test
+    public void get_otherDigest_returnsNull() throws Exception {
+        ResponseMemo memo = new ResponseMemo();
+        memo.setMaxEntries(2);
+        memo.put("songs", DIGEST, new SongsResponse(new ArrayList<Song>()));
+        assertNull(memo.get("songs", new byte[]{4}));
+    }
+
+    @Test
+    public void keyOf_ignoresAuth() throws Exception {
+        assertEquals(ResponseMemo.keyOf(ResponseFormat.XML, "action=songs&auth=a&limit=10"),
+                ResponseMemo.keyOf(ResponseFormat.XML, "action=songs&auth=b&limit=10"));
+    }
+}
@@ -0,0 +1,322 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.Exceptions.CircuitOpenException;
+import com.antoniotari.reactiveampache.Exceptions.HttpStatusException;
+import com.antoniotari.reactiveampache.Exceptions.ResponseParseException;
+import com.antoniotari.reactiveampache.api.RetryPolicy.ErrorKind;
+import com.antoniotari.reactiveampache.models.Error;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    private static final RetryPolicy POLICY = new RetryPolicy.Builder()
+            .maxAttempts(4)
+            .baseDelay(1, TimeUnit.MILLISECONDS)
+            .maxDelay(4, TimeUnit.MILLISECONDS)
+            .deadline(10, TimeUnit.SECONDS)
+            .build();
+
+    private static final Action1<Throwable> IGNORE = new Action1<Throwable>() {
+        @Override
+        public void call(final Throwable throwable) {
+        }
+    };
+
+    private static AmpacheApiException ampacheError(final String code) throws Exception {
+        Error error = new Error();
+        Field field = Error.class.getDeclaredField("code");
+        field.setAccessible(true);
+        field.set(error, code);
+        return new AmpacheApiException(error);
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 0);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onFailure();
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * fails with the given error the first failures times, then emits the number of attempts
+     */
+    private static Observable<Integer> failing(final AtomicInteger attempts, final int failures, final Throwable error) {
+        return Observable.create(new OnSubscribe<Integer>() {
+            @Override
+            public void call(final Subscriber<? super Integer> subscriber) {
+                int attempt = attempts.incrementAndGet();
+                if (attempt <= failures) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onNext(attempt);
+                    subscriber.onCompleted();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void classify_errorKinds() throws Exception {
+        assertEquals(ErrorKind.NETWORK, RetryPolicy.classify(new IOException()));
+        assertEquals(ErrorKind.AUTH, RetryPolicy.classify(new HttpStatusException(401, "")));
+        assertEquals(ErrorKind.SERVER, RetryPolicy.classify(new HttpStatusException(503, "")));
+        assertEquals(ErrorKind.SERVER, RetryPolicy.classify(new HttpStatusException(429, "")));
+        assertEquals(ErrorKind.SERVER, RetryPolicy.classify(new HttpStatusException(408, "")));
+        assertEquals(ErrorKind.CLIENT, RetryPolicy.classify(new HttpStatusException(404, "")));
+        assertEquals(ErrorKind.AUTH, RetryPolicy.classify(ampacheError("401")));
+        assertEquals(ErrorKind.AUTH, RetryPolicy.classify(ampacheError("4701")));
+        assertEquals(ErrorKind.SERVER, RetryPolicy.classify(ampacheError("501")));
+        assertEquals(ErrorKind.CLIENT, RetryPolicy.classify(ampacheError("405")));
+        assertEquals(ErrorKind.OTHER, RetryPolicy.classify(ampacheError(null)));
+        assertEquals(ErrorKind.PARSE, RetryPolicy.classify(new ResponseParseException("<root>", new Exception())));
+        assertEquals(ErrorKind.CIRCUIT_OPEN, RetryPolicy.classify(new CircuitOpenException("server")));
+        assertEquals(ErrorKind.OTHER, RetryPolicy.classify(new IllegalStateException()));
+    }
+
+    @Test
+    public void shouldRetry_serverAndNetworkErrors() throws Exception {
+        assertTrue(POLICY.shouldRetry(new IOException(), 1));
+        assertTrue(POLICY.shouldRetry(new HttpStatusException(503, ""), 2));
+        assertTrue(POLICY.shouldRetry(ampacheError("501"), 3));
+        assertTrue(POLICY.shouldRetry(new IllegalStateException(), 1));
+    }
+
+    @Test
+    public void shouldRetry_notClientParseOrCircuitOpen() throws Exception {
+        assertFalse(POLICY.shouldRetry(new HttpStatusException(404, ""), 1));
+        assertFalse(POLICY.shouldRetry(ampacheError("405"), 1));
+        assertFalse(POLICY.shouldRetry(new ResponseParseException("<root>", new Exception()), 1));
+        assertFalse(POLICY.shouldRetry(new CircuitOpenException("server"), 1));
+    }
+
+    @Test
+    public void shouldRetry_authOnlyOnce() throws Exception {
+        assertTrue(POLICY.shouldRetry(ampacheError("401"), 1));
+        assertFalse(POLICY.shouldRetry(ampacheError("401"), 2));
+        assertTrue(POLICY.shouldRetry(new HttpStatusException(401, ""), 1));
+        assertFalse(POLICY.shouldRetry(new HttpStatusException(401, ""), 2));
+    }
+
+    @Test
+    public void shouldRetry_notAfterMaxAttempts() {
+        assertTrue(POLICY.shouldRetry(new IOException(), 3));
+        assertFalse(POLICY.shouldRetry(new IOException(), 4));
+    }
+
+    @Test
+    public void delayMillis_cappedExponential() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .baseDelay(100, TimeUnit.MILLISECONDS)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.delayMillis(1) < 100);
+            assertTrue(policy.delayMillis(3) < 400);
+            long delay = policy.delayMillis(40);
+            assertTrue(delay >= 0 && delay < 1000);
+        }
+    }
+
+    @Test
+    public void apply_retriesUntilSuccess() {
+        AtomicInteger attempts = new AtomicInteger();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 30000);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        POLICY.apply(failing(attempts, 2, new IOException()), circuitBreaker, Schedulers.immediate()).subscribe(subscriber);
+
+        subscriber.assertTerminalEvent();
+        assertTrue(subscriber.getOnErrorEvents().isEmpty());
+        assertEquals(3, (int) subscriber.getOnNextEvents().get(0));
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void apply_givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        POLICY.apply(failing(attempts, 10, new IOException()), new CircuitBreaker("server", 30000), Schedulers.immediate())
+                .subscribe(subscriber);
+
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void apply_clientError_notRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        POLICY.apply(failing(attempts, 10, new HttpStatusException(404, "")), new CircuitBreaker("server", 30000),
+                Schedulers.immediate()).subscribe(subscriber);
+
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void apply_deadlineReached_notRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .baseDelay(1, TimeUnit.SECONDS)
+                .deadline(0, TimeUnit.MILLISECONDS)
+                .build();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        policy.apply(failing(attempts, 10, new IOException()), new CircuitBreaker("server", 30000), Schedulers.immediate())
+                .subscribe(subscriber);
+
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void apply_circuitOpen_failsFast() {
+        AtomicInteger attempts = new AtomicInteger();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 30000);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onFailure();
+        }
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        POLICY.apply(failing(attempts, 0, null), circuitBreaker, Schedulers.immediate()).subscribe(subscriber);
+
+        assertTrue(subscriber.getOnErrorEvents().get(0) instanceof CircuitOpenException);
+        assertEquals(0, attempts.get());
+    }
+
+    @Test
+    public void apply_serverFailures_openCircuit() {
+        AtomicInteger attempts = new AtomicInteger();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("server", 30000);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .maxAttempts(10)
+                .baseDelay(1, TimeUnit.MILLISECONDS)
+                .build();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        policy.apply(failing(attempts, 10, new HttpStatusException(500, "")), circuitBreaker, Schedulers.immediate())
+                .subscribe(subscriber);
+
+        // the sixth attempt is stopped by the circuit breaker
+        assertTrue(subscriber.getOnErrorEvents().get(0) instanceof CircuitOpenException);
+        assertEquals(5, attempts.get());
+        assertTrue(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void apply_trialSuccess_closesCircuit() {
+        CircuitBreaker circuitBreaker = openBreaker();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        POLICY.apply(Observable.just(1), circuitBreaker, Schedulers.immediate()).subscribe(subscriber);
+
+        assertEquals(1, subscriber.getOnNextEvents().size());
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void apply_trialFailure_releasesTrial() {
+        CircuitBreaker circuitBreaker = openBreaker();
+        RetryPolicy policy = new RetryPolicy.Builder().maxAttempts(1).build();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        policy.apply(Observable.<Integer>error(new IOException()), circuitBreaker, Schedulers.immediate()).subscribe(subscriber);
+
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void apply_trialCancelled_releasesTrial() {
+        CircuitBreaker circuitBreaker = openBreaker();
+        Subscription subscription = POLICY.apply(Observable.<Integer>never(), circuitBreaker, Schedulers.immediate())
+                .subscribe(new TestSubscriber<Integer>());
+        assertEquals(CircuitBreaker.DENIED, circuitBreaker.acquire());
+
+        subscription.unsubscribe();
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void apply_trialCancelledThenFails_releasesTrial() {
+        CircuitBreaker circuitBreaker = openBreaker();
+        final TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        // the request notices the cancellation and fails, like an http call cancelled by CallScope
+        Observable<Integer> request = Observable.create(new OnSubscribe<Integer>() {
+            @Override
+            public void call(final Subscriber<? super Integer> child) {
+                subscriber.unsubscribe();
+                child.onError(new InterruptedIOException("unsubscribed"));
+            }
+        });
+        POLICY.apply(request, circuitBreaker, Schedulers.immediate()).subscribe(subscriber);
+
+        assertTrue(subscriber.getOnErrorEvents().isEmpty());
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+
+    @Test
+    public void call_retriesUntilSuccess() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        int result = POLICY.call(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                if (attempts.incrementAndGet() < 3) throw new IOException();
+                return attempts.get();
+            }
+        }, new CircuitBreaker("server", 30000), IGNORE);
+        assertEquals(3, result);
+    }
+
+    @Test
+    public void call_trialSuccess_closesCircuit() throws Exception {
+        CircuitBreaker circuitBreaker = openBreaker();
+        POLICY.call(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 1;
+            }
+        }, circuitBreaker, IGNORE);
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void call_trialCancelled_releasesTrial() throws Exception {
+        CircuitBreaker circuitBreaker = openBreaker();
+        final CallScope scope = new CallScope();
+        CallScope previous = CallScope.attach(scope);
+        try {
+            POLICY.call(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    scope.cancel();
+                    throw new IOException("Canceled");
+                }
+            }, circuitBreaker, IGNORE);
+            fail();
+        } catch (InterruptedIOException e) {
+            // cancelled
+        } finally {
+            CallScope.attach(previous);
+        }
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(CircuitBreaker.TRIAL, circuitBreaker.acquire());
+    }
+}
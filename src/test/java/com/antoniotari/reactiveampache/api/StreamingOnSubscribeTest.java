@@ -0,0 +1,140 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+public class StreamingOnSubscribeTest {
+
+    // the default bulk pool of SchedulerPolicy
+    private final ExecutorService mBulkExecutor = Executors.newFixedThreadPool(2);
+    private final Scheduler mBulk = Schedulers.from(mBulkExecutor);
+
+    @After
+    public void tearDown() {
+        mBulkExecutor.shutdownNow();
+    }
+
+    private Observable<Integer> stream(final int count, final AtomicInteger parsed) {
+        return CallScope.bind(Observable.create(new StreamingOnSubscribe<Integer>(mBulk) {
+            @Override
+            void stream(final ElementListener<Integer> listener) throws Exception {
+                for (int i = 0; i < count; i++) {
+                    parsed.incrementAndGet();
+                    listener.onElement(i);
+                }
+            }
+        }));
+    }
+
+    /**
+     * the chain of AmpacheApi.streaming, observeOn requests a buffer of elements at a time
+     */
+    @Test
+    public void stream_moreThanObserveOnBuffer_completes() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        stream(5000, new AtomicInteger()).observeOn(Schedulers.newThread()).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(5000, subscriber.getOnNextEvents().size());
+        assertEquals(1, subscriber.getOnCompletedEvents().size());
+    }
+
+    /**
+     * subscribeOn delivers the requests on its worker, which is free since the parsing runs on another one
+     */
+    @Test
+    public void stream_subscribeOnAndObserveOn_completes() {
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        stream(5000, new AtomicInteger()).subscribeOn(mBulk).observeOn(Schedulers.newThread()).subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(5000, subscriber.getOnNextEvents().size());
+        assertEquals(1, subscriber.getOnCompletedEvents().size());
+    }
+
+    /**
+     * more streams than bulk threads, every stream gets a thread once another one completes
+     */
+    @Test
+    public void streams_moreThanBulkThreads_allComplete() {
+        List<TestSubscriber<Integer>> subscribers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+            stream(3000, new AtomicInteger()).observeOn(Schedulers.newThread()).subscribe(subscriber);
+            subscribers.add(subscriber);
+        }
+        for (TestSubscriber<Integer> subscriber : subscribers) {
+            subscriber.awaitTerminalEvent(10, TimeUnit.SECONDS);
+            assertEquals(3000, subscriber.getOnNextEvents().size());
+            assertEquals(1, subscriber.getOnCompletedEvents().size());
+        }
+    }
+
+    @Test
+    public void stream_slowSubscriber_throttlesParsing() throws Exception {
+        final AtomicInteger parsed = new AtomicInteger();
+        final AtomicInteger received = new AtomicInteger();
+        stream(5000, parsed).subscribe(new Subscriber<Integer>() {
+            @Override
+            public void onStart() {
+                request(10);
+            }
+
+            @Override
+            public void onNext(final Integer integer) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(final Throwable e) {
+            }
+        });
+        Thread.sleep(300);
+        assertEquals(10, received.get());
+        // the element after the last one requested is parsed, then the parser waits
+        assertTrue(parsed.get() <= 11);
+    }
+
+    @Test
+    public void stream_unsubscribed_stopsParsing() throws Exception {
+        final AtomicInteger parsed = new AtomicInteger();
+        TestSubscriber<Integer> subscriber = new TestSubscriber<Integer>() {
+            @Override
+            public void onStart() {
+                request(1);
+            }
+        };
+        stream(5000, parsed).subscribe(subscriber);
+        Thread.sleep(100);
+        subscriber.unsubscribe();
+        Thread.sleep(100);
+        assertTrue(parsed.get() <= 2);
+
+        // the worker was released
+        TestSubscriber<Integer> next = new TestSubscriber<>();
+        stream(10, new AtomicInteger()).subscribe(next);
+        next.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        assertEquals(10, next.getOnNextEvents().size());
+    }
+}
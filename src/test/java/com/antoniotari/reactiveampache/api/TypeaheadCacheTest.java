@@ -0,0 +1,54 @@
+package com.antoniotari.reactiveampache.api;
+
+import java.util.List;
+
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.SongsResponse;
+import com.antoniotari.reactiveampache.utils.SerializeUtils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TypeaheadCacheTest {
+
+    private static List<Song> songs() throws Exception {
+        return new SerializeUtils().fromXml("<root>" +
+                "<song id=\"1\"><title>Help</title><artist id=\"1\">The Beatles</artist><album id=\"1\">Help</album></song>" +
+                "<song id=\"2\"><title>Beat It</title><artist id=\"2\">Michael Jackson</artist><album id=\"2\">Thriller</album></song>" +
+                "<song id=\"3\"><title>Tango</title><artist id=\"3\">Somebody</artist><album id=\"3\">Dance</album>" +
+                "<tag id=\"1\" count=\"1\">Beatbox</tag></song>" +
+                "</root>", SongsResponse.class).getSongs();
+    }
+
+    @Test
+    public void refine_noCachedPrefix_returnsNull() throws Exception {
+        TypeaheadCache cache = new TypeaheadCache(4);
+        cache.put("help", songs());
+        assertNull(cache.refine("beat"));
+    }
+
+    @Test
+    public void refine_filtersTitleArtistAlbumAndTags() throws Exception {
+        TypeaheadCache cache = new TypeaheadCache(4);
+        cache.put("bea", songs());
+
+        List<Song> refined = cache.refine("beat");
+        assertEquals(3, refined.size());
+        refined = cache.refine("BEATB");
+        assertEquals(1, refined.size());
+        assertEquals("3", refined.get(0).getId());
+    }
+
+    @Test
+    public void refine_doesNotStoreFilteredLists() throws Exception {
+        TypeaheadCache cache = new TypeaheadCache(4);
+        cache.put("be", songs());
+
+        List<Song> first = cache.refine("beatl");
+        assertEquals(1, first.size());
+        // filtered again from the server list of "be", the filtered list of "beatl" was not kept
+        assertNotSame(first, cache.refine("beatl"));
+        assertEquals(3, cache.refine("beat").size());
+    }
+}
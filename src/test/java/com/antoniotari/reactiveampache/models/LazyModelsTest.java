@@ -0,0 +1,119 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.HeapMeter;
+import com.antoniotari.reactiveampache.TestLibrary;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LazyModelsTest {
+
+    private static <T> List<T> parseEager(final byte[] xml, final String elementName, final XmlElementReader<T> reader)
+            throws Exception {
+        final List<T> list = new ArrayList<>();
+        XmlStreamParser.parseList(new ByteArrayInputStream(xml), elementName, reader, new ElementListener<T>() {
+            @Override
+            public void onElement(final T element) {
+                list.add(element);
+            }
+        });
+        return list;
+    }
+
+    @Test
+    public void readList_songs_sameFieldsAsEagerParsing() throws Exception {
+        byte[] xml = TestLibrary.songsXml(50, 10, 2);
+        List<Song> eager = parseEager(xml, "song", XmlElementReaders.SONG);
+        List<Song> lazy = LazySong.readList(xml);
+
+        assertEquals(eager.size(), lazy.size());
+        for (int i = 0; i < eager.size(); i++) {
+            Song expected = eager.get(i);
+            Song actual = lazy.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getArtist().getId(), actual.getArtist().getId());
+            assertEquals(expected.getArtist().getName(), actual.getArtist().getName());
+            assertEquals(expected.getAlbum().getName(), actual.getAlbum().getName());
+            assertEquals(expected.getTag().get(0).getTag(), actual.getTag().get(0).getTag());
+            assertEquals(expected.getTrack(), actual.getTrack());
+            assertEquals(expected.getYear(), actual.getYear());
+            assertEquals(expected.getMode(), actual.getMode());
+            assertEquals(expected.getMime(), actual.getMime());
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getMbid(), actual.getMbid());
+            assertEquals(expected.getAlbum_mbid(), actual.getAlbum_mbid());
+            assertEquals(expected.getArtist_mbid(), actual.getArtist_mbid());
+            assertEquals(expected.getArt(), actual.getArt());
+            assertEquals(expected.getAveragerating(), actual.getAveragerating(), 0);
+        }
+    }
+
+    @Test
+    public void readList_albums_sameFieldsAsEagerParsing() throws Exception {
+        byte[] xml = ("<root><album id=\"7\"><name>Abbey &amp; Road</name><artist id=\"3\">The Beatles</artist>" +
+                "<year>1969</year><tracks>17</tracks><art><![CDATA[http://example.com/a?b=1&c=2]]></art></album>" +
+                "<album id=\"8\"><name>Help</name><year>1965</year></album></root>").getBytes(TestLibrary.UTF_8);
+        List<Album> eager = parseEager(xml, "album", XmlElementReaders.ALBUM);
+        List<Album> lazy = LazyAlbum.readList(xml);
+
+        assertEquals(2, lazy.size());
+        for (int i = 0; i < eager.size(); i++) {
+            assertEquals(eager.get(i).getId(), lazy.get(i).getId());
+            assertEquals(eager.get(i).getName(), lazy.get(i).getName());
+            assertEquals(eager.get(i).getYear(), lazy.get(i).getYear());
+            assertEquals(eager.get(i).getArt(), lazy.get(i).getArt());
+            assertEquals(eager.get(i).getTracks(), lazy.get(i).getTracks());
+        }
+        assertEquals("Abbey & Road", lazy.get(0).getName());
+        assertNull(lazy.get(1).getArt());
+    }
+
+    @Test
+    public void readList_keepsOnlyTheLazyFields() throws Exception {
+        byte[] xml = TestLibrary.songsXml(1, 10, 2);
+        LazySong song = (LazySong) LazySong.readList(xml).get(0);
+
+        String lazyText = song.getYear() + song.getMode() + song.getMime() + song.getUrl() + song.getMbid() +
+                song.getAlbum_mbid() + song.getArtist_mbid() + song.getArt();
+        song = (LazySong) LazySong.readList(xml).get(0);
+        assertEquals(lazyText.getBytes(TestLibrary.UTF_8).length, song.getRawSize());
+        assertTrue(song.getRawSize() < xml.length / 2);
+    }
+
+    /**
+     * the lazy songs must not retain more than the decoded songs, they keep the text of the lazy fields
+     * as utf-8 bytes in one buffer per song instead of a string each
+     */
+    @Test
+    public void retainedHeap_lazySongs_lessThanEager() throws Exception {
+        byte[] xml = TestLibrary.songsXml(20000, 12, 4);
+
+        long before = HeapMeter.usedMemory();
+        List<Song> eager = parseEager(xml, "song", XmlElementReaders.SONG);
+        // the lazy fields of the eager songs are decoded anyway, read them like a client would
+        for (Song song : eager) {
+            song.getUrl();
+        }
+        long eagerRetained = HeapMeter.usedMemory() - before;
+        assertEquals(20000, eager.size());
+        eager = null;
+
+        before = HeapMeter.usedMemory();
+        List<Song> lazy = LazySong.readList(xml);
+        long lazyRetained = HeapMeter.usedMemory() - before;
+        assertEquals(20000, lazy.size());
+
+        System.out.println("20000 songs, " + HeapMeter.megabytes(xml.length) + " of xml: eager " +
+                HeapMeter.megabytes(eagerRetained) + ", lazy " + HeapMeter.megabytes(lazyRetained));
+        assertTrue("lazy " + lazyRetained + " eager " + eagerRetained, lazyRetained < eagerRetained);
+        assertNotNull(lazy.get(0).getId());
+    }
+}
@@ -0,0 +1,185 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.antoniotari.reactiveampache.HeapMeter;
+import com.antoniotari.reactiveampache.TestLibrary;
+import com.antoniotari.reactiveampache.utils.ChunkedXmlParser;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ModelInternerTest {
+
+    @After
+    public void tearDown() {
+        ModelInterner.setEnabled(false);
+        ModelInterner.setMaxEntries(ModelInterner.DEFAULT_MAX_ENTRIES);
+    }
+
+    private static List<Song> parseSongs(final InputStream inputStream) throws Exception {
+        final List<Song> list = new ArrayList<>();
+        XmlStreamParser.parseList(inputStream, "song", XmlElementReaders.SONG, new ElementListener<Song>() {
+            @Override
+            public void onElement(final Song song) {
+                list.add(song);
+            }
+        });
+        return list;
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static InfoTag infoTag(final String id, final String name) {
+        InfoTag infoTag = new InfoTag();
+        infoTag.id = id;
+        infoTag.name = name;
+        return infoTag;
+    }
+
+    private static int distinct(final List<Song> songs, final boolean artists) {
+        Map<Object, Boolean> instances = new IdentityHashMap<>();
+        for (Song song : songs) {
+            instances.put(artists ? song.getArtist() : song.getTag().get(0), true);
+        }
+        return instances.size();
+    }
+
+    @Test
+    public void intern_sameIdAndName_sameInstance() {
+        ModelInterner.setEnabled(true);
+        InfoTag first = ModelInterner.intern(infoTag("1", "Artist"));
+        assertSame(first, ModelInterner.intern(infoTag("1", "Artist")));
+        assertNotSame(first, ModelInterner.intern(infoTag("1", "Other name")));
+        assertNotSame(first, ModelInterner.intern(infoTag("2", "Artist")));
+    }
+
+    @Test
+    public void intern_disabled_sameObject() {
+        InfoTag infoTag = infoTag("1", "Artist");
+        assertSame(infoTag, ModelInterner.intern(infoTag));
+        assertEquals(0, ModelInterner.size());
+    }
+
+    @Test
+    public void intern_fullPool_emptied() {
+        ModelInterner.setEnabled(true);
+        ModelInterner.setMaxEntries(10);
+        for (int i = 0; i < 25; i++) {
+            ModelInterner.intern(infoTag(String.valueOf(i), "Artist " + i));
+        }
+        assertTrue(ModelInterner.size() <= 10);
+    }
+
+    /**
+     * threads interning equal artists at the same time all get the same instance
+     */
+    @Test
+    public void intern_concurrent_oneInstancePerArtist() throws Exception {
+        ModelInterner.setEnabled(true);
+        final int threads = 8;
+        final int artists = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<InfoTag[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<InfoTag[]>() {
+                    @Override
+                    public InfoTag[] call() throws Exception {
+                        start.await();
+                        InfoTag[] shared = new InfoTag[artists];
+                        for (int i = 0; i < artists; i++) {
+                            shared[i] = ModelInterner.intern(infoTag(String.valueOf(i), "Artist " + i));
+                        }
+                        return shared;
+                    }
+                }));
+            }
+            start.countDown();
+            InfoTag[] expected = futures.get(0).get();
+            for (Future<InfoTag[]> future : futures) {
+                InfoTag[] shared = future.get();
+                for (int i = 0; i < artists; i++) {
+                    assertSame(expected[i], shared[i]);
+                }
+            }
+            assertEquals(artists, ModelInterner.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * the chunks parsed at the same time share the artists and tags of the other chunks
+     */
+    @Test
+    public void chunkedParsing_sharesAcrossChunks() throws Exception {
+        ModelInterner.setEnabled(true);
+        byte[] xml = readAll(TestLibrary.songsStream(2400, 12, 10));
+        assertTrue(xml.length >= ChunkedXmlParser.MIN_PARALLEL_SIZE);
+
+        for (ExecutorService executor : new ExecutorService[]{ChunkedXmlParser.getDefaultExecutor(), Executors.newFixedThreadPool(8)}) {
+            ModelInterner.clear();
+            List<Song> songs = ChunkedXmlParser.parseList(xml, "song", XmlElementReaders.SONG, 8, executor);
+            assertEquals(2400, songs.size());
+            // 2400 songs, 200 albums and 20 artists
+            assertEquals(20, distinct(songs, true));
+            assertEquals(20, distinct(songs, false));
+            for (Song song : songs) {
+                assertEquals(song.getArtist().getName(), "Artist " + (Integer.parseInt(song.getId()) - 1) / 120);
+            }
+        }
+    }
+
+    /**
+     * a synthetic library of 120k songs, 12 songs per album and 396 songs per artist.
+     * the songs have long unique urls and mbids, sharing the artists, albums and tags saves about a fifth of the heap,
+     * 123 MB instead of 159 MB on a desktop jvm
+     */
+    @Test
+    public void retainedHeap_interned_lessThanNotInterned() throws Exception {
+        int songCount = 120000;
+
+        long before = HeapMeter.usedMemory();
+        List<Song> songs = parseSongs(TestLibrary.songsStream(songCount, 12, 33));
+        long plainRetained = HeapMeter.usedMemory() - before;
+        assertEquals(songCount, distinct(songs, true));
+        songs = null;
+
+        ModelInterner.setEnabled(true);
+        ModelInterner.setMaxEntries(songCount);
+        before = HeapMeter.usedMemory();
+        songs = parseSongs(TestLibrary.songsStream(songCount, 12, 33));
+        long internedRetained = HeapMeter.usedMemory() - before;
+        assertEquals(songCount / 396 + 1, distinct(songs, true));
+
+        System.out.println(songCount + " songs: not interned " + HeapMeter.megabytes(plainRetained) +
+                ", interned " + HeapMeter.megabytes(internedRetained));
+        assertTrue("interned " + internedRetained + " not interned " + plainRetained,
+                internedRetained < plainRetained - plainRetained / 10);
+        assertEquals(songCount, songs.size());
+    }
+}
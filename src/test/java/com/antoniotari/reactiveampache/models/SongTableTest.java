@@ -0,0 +1,125 @@
+package com.antoniotari.reactiveampache.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.antoniotari.reactiveampache.HeapMeter;
+import com.antoniotari.reactiveampache.TestLibrary;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser;
+import com.antoniotari.reactiveampache.utils.XmlStreamParser.ElementListener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongTableTest {
+
+    private static List<Song> parseSongs(final int songs) throws Exception {
+        final List<Song> list = new ArrayList<>();
+        XmlStreamParser.parseList(TestLibrary.songsStream(songs, 12, 33), "song", XmlElementReaders.SONG,
+                new ElementListener<Song>() {
+                    @Override
+                    public void onElement(final Song song) {
+                        list.add(song);
+                    }
+                });
+        return list;
+    }
+
+    private static SongTable parseTable(final int songs, final int capacity) throws Exception {
+        final SongTable.Builder builder = new SongTable.Builder(capacity);
+        XmlStreamParser.parseList(TestLibrary.songsStream(songs, 12, 33), "song", XmlElementReaders.SONG,
+                new ElementListener<Song>() {
+                    @Override
+                    public void onElement(final Song song) {
+                        builder.add(song);
+                    }
+                });
+        return builder.build();
+    }
+
+    private static void assertSameSong(final Song expected, final Song actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getArtist().getId(), actual.getArtist().getId());
+        assertEquals(expected.getArtist().getName(), actual.getArtist().getName());
+        assertEquals(expected.getAlbum().getName(), actual.getAlbum().getName());
+        assertEquals(expected.getTag().get(0).getTag(), actual.getTag().get(0).getTag());
+        assertEquals(expected.getTrack(), actual.getTrack());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getMbid(), actual.getMbid());
+        assertEquals(expected.getArt(), actual.getArt());
+        assertEquals(expected.getAveragerating(), actual.getAveragerating(), 0);
+    }
+
+    @Test
+    public void of_sameSongs() throws Exception {
+        List<Song> songs = parseSongs(100);
+        SongTable table = SongTable.of(songs);
+
+        assertEquals(100, table.size());
+        for (int i = 0; i < songs.size(); i++) {
+            assertSameSong(songs.get(i), table.get(i));
+        }
+        assertEquals(42, table.indexOfId("43"));
+        // the songs of an album share its artist
+        assertSame(table.get(0).getArtist(), table.get(1).getArtist());
+    }
+
+    @Test
+    public void builder_capacityTooSmallOrTooBig_sameSongs() throws Exception {
+        List<Song> songs = parseSongs(100);
+        for (int capacity : new int[]{0, 1, 99, 100, 101, 1000}) {
+            SongTable table = parseTable(100, capacity);
+            assertEquals(100, table.size());
+            for (int i = 0; i < songs.size(); i++) {
+                assertSameSong(songs.get(i), table.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void builder_addAfterBuild_tableUnchanged() throws Exception {
+        List<Song> songs = parseSongs(11);
+        SongTable.Builder builder = new SongTable.Builder(10);
+        for (int i = 0; i < 10; i++) {
+            builder.add(songs.get(i));
+        }
+        // the table takes the full columns of the builder
+        SongTable table = builder.build();
+        builder.add(songs.get(10));
+
+        assertEquals(10, table.size());
+        assertEquals(11, builder.build().size());
+        for (int i = 0; i < 10; i++) {
+            assertSameSong(songs.get(i), table.get(i));
+        }
+    }
+
+    /**
+     * a synthetic library of 120k songs, 12 songs per album and 33 albums per artist.
+     * the table retains about a third of the list of songs, 59 MB instead of 159 MB on a desktop jvm
+     */
+    @Test
+    public void retainedHeap_table_lessThanHalfOfTheSongs() throws Exception {
+        int songCount = 120000;
+
+        long before = HeapMeter.usedMemory();
+        List<Song> songs = parseSongs(songCount);
+        long songsRetained = HeapMeter.usedMemory() - before;
+        assertEquals(songCount, songs.size());
+        songs = null;
+
+        before = HeapMeter.usedMemory();
+        SongTable table = parseTable(songCount, songCount);
+        long tableRetained = HeapMeter.usedMemory() - before;
+        assertEquals(songCount, table.size());
+
+        System.out.println(songCount + " songs: list " + HeapMeter.megabytes(songsRetained) +
+                ", table " + HeapMeter.megabytes(tableRetained));
+        assertTrue("table " + tableRetained + " list " + songsRetained, tableRetained < songsRetained / 2);
+        assertNotNull(table.get(0).getId());
+    }
+}
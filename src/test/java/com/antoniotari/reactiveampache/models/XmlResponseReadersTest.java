@@ -0,0 +1,57 @@
+package com.antoniotari.reactiveampache.models;
+
+import com.antoniotari.reactiveampache.utils.SerializeUtils;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import static org.junit.Assert.*;
+
+public class XmlResponseReadersTest {
+
+    private static final String HANDSHAKE = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<root>\n" +
+            "<auth><![CDATA[cfj3f237d563f479f5223k23189dbb34]]></auth>\n" +
+            "<api><![CDATA[350001]]></api>\n" +
+            "<session_expire><![CDATA[2016-05-20T10:44:29+00:00]]></session_expire>\n" +
+            "<songs><![CDATA[120000]]></songs>\n" +
+            "<albums><![CDATA[9000]]></albums>\n" +
+            "<artists><![CDATA[3000]]></artists>\n" +
+            "</root>";
+
+    @Test
+    public void handshake_readsFields() throws Exception {
+        HandshakeResponse response = new SerializeUtils().fromXml(HANDSHAKE, HandshakeResponse.class);
+        assertEquals("cfj3f237d563f479f5223k23189dbb34", response.getAuth());
+        assertEquals(120000, response.getSongs());
+        assertEquals(3000, response.getArtists());
+        assertNull(response.getError());
+    }
+
+    @Test(expected = XmlPullParserException.class)
+    public void handshake_withoutAuth_throws() throws Exception {
+        new SerializeUtils().fromXml(HANDSHAKE.replaceFirst("<auth>.*</auth>", ""), HandshakeResponse.class);
+    }
+
+    @Test
+    public void handshake_error_withoutAuth_readsError() throws Exception {
+        HandshakeResponse response = new SerializeUtils().fromXml(
+                "<root><error code=\"401\"><![CDATA[Error Invalid Handshake - Invalid Username/Password]]></error></root>",
+                HandshakeResponse.class);
+        assertNotNull(response.getError());
+        assertEquals("401", response.getError().getCode());
+        assertNull(response.getAuth());
+    }
+
+    @Test
+    public void ping_readsFields() throws Exception {
+        PingResponse response = new SerializeUtils().fromXml("<root><session_expire>2016-05-20T10:44:29+00:00</session_expire>" +
+                "<server>3.8.2</server><version>350001</version><compatible>350001</compatible></root>", PingResponse.class);
+        assertEquals("2016-05-20T10:44:29+00:00", response.getSession_expire());
+    }
+
+    @Test(expected = XmlPullParserException.class)
+    public void ping_withoutServer_throws() throws Exception {
+        new SerializeUtils().fromXml("<root><session_expire>2016-05-20T10:44:29+00:00</session_expire>" +
+                "<version>350001</version><compatible>350001</compatible></root>", PingResponse.class);
+    }
+}
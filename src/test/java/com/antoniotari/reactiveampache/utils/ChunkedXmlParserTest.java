@@ -0,0 +1,153 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.antoniotari.reactiveampache.Exceptions.AmpacheApiException;
+import com.antoniotari.reactiveampache.TestLibrary;
+import com.antoniotari.reactiveampache.models.Song;
+import com.antoniotari.reactiveampache.models.SongsResponse;
+import com.antoniotari.reactiveampache.models.XmlElementReaders;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkedXmlParserTest {
+
+    private ThreadPoolExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    private List<Song> parseSequential(final byte[] xml) throws Exception {
+        return ChunkedXmlParser.parseList(xml, "song", XmlElementReaders.SONG, 1, mExecutor);
+    }
+
+    private List<Song> parseChunked(final byte[] xml, final int chunks) throws Exception {
+        return ChunkedXmlParser.parseList(xml, "song", XmlElementReaders.SONG, chunks, mExecutor);
+    }
+
+    private static void assertSameSongs(final List<Song> expected, final List<Song> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getArtist().getName(), actual.get(i).getArtist().getName());
+            assertEquals(expected.get(i).getAlbum().getName(), actual.get(i).getAlbum().getName());
+            assertEquals(expected.get(i).getUrl(), actual.get(i).getUrl());
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+        }
+    }
+
+    private static byte[] songsXml(final String header, final String betweenSongs, final int songs) {
+        StringBuilder builder = new StringBuilder("ï»<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<root>\n");
+        builder.append(header);
+        for (int i = 0; i < songs; i++) {
+            TestLibrary.appendSong(builder, i, 10, 3);
+            builder.append(betweenSongs);
+        }
+        builder.append("</root>\n");
+        return builder.toString().getBytes(TestLibrary.UTF_8);
+    }
+
+    @Test
+    public void parseList_bigLibrary_sameAsSequential() throws Exception {
+        byte[] xml = TestLibrary.songsXml(1000, 10, 3);
+        assertTrue(xml.length >= ChunkedXmlParser.MIN_PARALLEL_SIZE);
+        List<Song> sequential = parseSequential(xml);
+        assertEquals(1000, sequential.size());
+
+        for (int chunks = 2; chunks <= 9; chunks++) {
+            long tasks = mExecutor.getTaskCount();
+            assertSameSongs(sequential, parseChunked(xml, chunks));
+            // the parallel path really ran
+            assertEquals(chunks, mExecutor.getTaskCount() - tasks);
+        }
+    }
+
+    @Test
+    public void parseList_tagsInCdataAndComments_notSplitThere() throws Exception {
+        String title = "<title><![CDATA[<song id=\"0\"><title>fake</title></song>]]></title>\n";
+        String comment = "<!-- <song id=\"0\"> -->\n";
+        byte[] xml = songsXml(comment, comment, 600);
+        String text = new String(xml, TestLibrary.UTF_8)
+                .replace("<time>", title + "<time>");
+        xml = text.getBytes(TestLibrary.UTF_8);
+        assertTrue(xml.length >= ChunkedXmlParser.MIN_PARALLEL_SIZE);
+
+        assertEquals(600, ChunkedXmlParser.findElementStarts(xml, "song").size());
+        List<Song> sequential = parseSequential(xml);
+        assertEquals(600, sequential.size());
+        for (int chunks = 2; chunks <= 8; chunks++) {
+            assertSameSongs(sequential, parseChunked(xml, chunks));
+        }
+    }
+
+    @Test
+    public void findElementStarts_longerNames_notElements() throws Exception {
+        byte[] xml = ("<root><songs>2</songs><song id=\"1\"><songtitle/></song><song\n id=\"2\"/><song>" +
+                "<![CDATA[<song>]]></song></root>").getBytes(TestLibrary.UTF_8);
+        assertEquals(3, ChunkedXmlParser.findElementStarts(xml, "song").size());
+
+        byte[] library = songsXml("<songs>600</songs>\n", "<songs_total>1</songs_total>\n", 600);
+        assertEquals(600, ChunkedXmlParser.findElementStarts(library, "song").size());
+        List<Song> sequential = parseSequential(library);
+        assertEquals(600, sequential.size());
+        assertSameSongs(sequential, parseChunked(library, 4));
+    }
+
+    @Test
+    public void parseList_errorResponse_throws() throws Exception {
+        byte[] xml = "\r\n<?xml version=\"1.0\" encoding=\"UTF-8\" ?><root><error code=\"401\">Session Expired</error></root>"
+                .getBytes(TestLibrary.UTF_8);
+        for (int chunks = 1; chunks <= 4; chunks++) {
+            try {
+                parseChunked(xml, chunks);
+                fail();
+            } catch (AmpacheApiException e) {
+                assertEquals("401", e.getAmpacheError().getCode());
+            }
+        }
+    }
+
+    @Test
+    public void parseList_emptyList_empty() throws Exception {
+        byte[] xml = "<root></root>".getBytes(TestLibrary.UTF_8);
+        assertTrue(parseChunked(xml, 4).isEmpty());
+    }
+
+    @Test
+    public void parseList_moreChunksThanElements_sameAsSequential() throws Exception {
+        // few elements big enough to take the parallel path
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 100 * 1024; i++) {
+            padding.append('x');
+        }
+        byte[] xml = new String(songsXml("", "", 5), TestLibrary.UTF_8)
+                .replace("<time>", "<comment>" + padding + "</comment><time>").getBytes(TestLibrary.UTF_8);
+        List<Song> sequential = parseSequential(xml);
+        assertEquals(5, sequential.size());
+        for (int chunks = 2; chunks <= 12; chunks++) {
+            assertSameSongs(sequential, parseChunked(xml, chunks));
+        }
+    }
+
+    @Test
+    public void parseBenchmark_sameElements() throws Exception {
+        byte[] xml = TestLibrary.songsXml(5000, 10, 3);
+        ParseBenchmark.Result result = ParseBenchmark.run(xml, SongsResponse.class, "song", XmlElementReaders.SONG, 4, 3);
+        System.out.println("parse benchmark " + result);
+        assertEquals(5000, result.getElements());
+    }
+}
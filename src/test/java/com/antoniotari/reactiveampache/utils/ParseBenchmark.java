@@ -0,0 +1,100 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.antoniotari.reactiveampache.models.XmlElementReader;
+
+/**
+ * compares the time SerializeUtils.fromXml and ChunkedXmlParser take to parse the same response.
+ * every parser runs once to warm up, then the best of the given number of runs is kept
+ */
+public final class ParseBenchmark {
+
+    private ParseBenchmark() {
+    }
+
+    public static class Result {
+        private final int mElements;
+        private final int mBytes;
+        private final int mChunks;
+        private final long mSequentialNanos;
+        private final long mChunkedNanos;
+
+        Result(final int elements, final int bytes, final int chunks, final long sequentialNanos, final long chunkedNanos) {
+            mElements = elements;
+            mBytes = bytes;
+            mChunks = chunks;
+            mSequentialNanos = sequentialNanos;
+            mChunkedNanos = chunkedNanos;
+        }
+
+        public int getElements() {
+            return mElements;
+        }
+
+        public int getBytes() {
+            return mBytes;
+        }
+
+        public int getChunks() {
+            return mChunks;
+        }
+
+        public long getSequentialMillis() {
+            return mSequentialNanos / 1000000;
+        }
+
+        public long getChunkedMillis() {
+            return mChunkedNanos / 1000000;
+        }
+
+        /**
+         * @return how many times faster the chunked parsing is
+         */
+        public float getSpeedup() {
+            return mChunkedNanos == 0 ? 0 : (float) mSequentialNanos / mChunkedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return mElements + " elements, " + mBytes + " bytes: fromXml " + getSequentialMillis() + "ms, " +
+                    mChunks + " chunks " + getChunkedMillis() + "ms, speedup " + getSpeedup();
+        }
+    }
+
+    /**
+     * @param xml           the response to parse
+     * @param responseClass the class passed to SerializeUtils.fromXml, e.g. SongsResponse
+     * @param elementName   name of the list elements, e.g. song
+     * @param reader        the reader of the list elements
+     * @param chunks        number of chunks parsed at the same time
+     * @param runs          number of measured runs of each parser
+     */
+    public static <T> Result run(final byte[] xml, final Class<?> responseClass, final String elementName,
+            final XmlElementReader<T> reader, final int chunks, final int runs) throws Exception {
+        ExecutorService executor = ChunkedXmlParser.getDefaultExecutor();
+        SerializeUtils serializeUtils = new SerializeUtils();
+
+        // warm up
+        serializeUtils.fromXml(new InputStreamReader(new ByteArrayInputStream(xml), "UTF-8"), responseClass);
+        int elements = ChunkedXmlParser.parseList(xml, elementName, reader, chunks, executor).size();
+
+        long bestSequential = Long.MAX_VALUE;
+        long bestChunked = Long.MAX_VALUE;
+        for (int i = 0; i < Math.max(runs, 1); i++) {
+            long start = System.nanoTime();
+            serializeUtils.fromXml(new InputStreamReader(new ByteArrayInputStream(xml), "UTF-8"), responseClass);
+            bestSequential = Math.min(bestSequential, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<T> list = ChunkedXmlParser.parseList(xml, elementName, reader, chunks, executor);
+            bestChunked = Math.min(bestChunked, System.nanoTime() - start);
+            elements = list.size();
+        }
+
+        return new Result(elements, xml.length, chunks, bestSequential, bestChunked);
+    }
+}
@@ -0,0 +1,144 @@
+package com.antoniotari.reactiveampache.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class XmlSanitizingReaderTest {
+
+    /**
+     * hands out one character per read, like a slow network stream
+     */
+    private static class TrickleReader extends Reader {
+        private final String mText;
+        private int mPosition;
+
+        TrickleReader(final String text) {
+            mText = text;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (mPosition == mText.length()) return -1;
+            if (len == 0) return 0;
+            cbuf[off] = mText.charAt(mPosition++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String readAll(final Reader reader, final int chunk) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[chunk];
+        int read;
+        while ((read = reader.read(buffer, 0, chunk)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * the same result whatever the input and the output are split into
+     */
+    private static void assertSanitized(final String expected, final String input) throws IOException {
+        assertEquals(expected, readAll(new XmlSanitizingReader(new StringReader(input)), 8192));
+        assertEquals(expected, readAll(new XmlSanitizingReader(new StringReader(input)), 1));
+        assertEquals(expected, readAll(new XmlSanitizingReader(new TrickleReader(input)), 8192));
+        assertEquals(expected, readAll(new XmlSanitizingReader(new TrickleReader(input)), 1));
+    }
+
+    @Test
+    public void bareAmpersand_escaped() throws Exception {
+        assertSanitized("<a>Tom &amp; Jerry</a>", "<a>Tom & Jerry</a>");
+        assertSanitized("<a>&amp;</a>", "<a>&</a>");
+        assertSanitized("<a>R&amp;B</a>", "<a>R&B</a>");
+    }
+
+    @Test
+    public void entities_kept() throws Exception {
+        assertSanitized("<a>&amp; &lt; &gt; &quot; &apos; &#39; &#x27; &#X2F;</a>",
+                "<a>&amp; &lt; &gt; &quot; &apos; &#39; &#x27; &#X2F;</a>");
+    }
+
+    @Test
+    public void notEntities_escaped() throws Exception {
+        assertSanitized("<a>&amp;#; &amp;#x; &amp;amp &amp;1a; &amp;;</a>", "<a>&#; &#x; &amp &1a; &;</a>");
+        // longer than any entity
+        assertSanitized("<a>&amp;abcdefghijkl;</a>", "<a>&abcdefghijkl;</a>");
+    }
+
+    @Test
+    public void cdata_notEscaped() throws Exception {
+        assertSanitized("<a><![CDATA[Tom & Jerry]]></a>", "<a><![CDATA[Tom & Jerry]]></a>");
+        assertSanitized("<a><![CDATA[x]]> &amp; y</a>", "<a><![CDATA[x]]> & y</a>");
+        // the section ends at the first ]]> even after other ]
+        assertSanitized("<a><![CDATA[x]]]]> &amp;</a>", "<a><![CDATA[x]]]]> &</a>");
+        assertSanitized("<a><![CDATA[<b>&</b>]]><c>&amp;</c></a>", "<a><![CDATA[<b>&</b>]]><c>&</c></a>");
+    }
+
+    @Test
+    public void preamble_skipped() throws Exception {
+        assertSanitized("<root></root>", "\r\n<root></root>");
+        assertSanitized("<root></root>", "ï»<root></root>");
+        assertSanitized("<?xml version=\"1.0\"?><root/>", "xy<?xml version=\"1.0\"?><root/>");
+    }
+
+    @Test
+    public void trailingJunk_dropped() throws Exception {
+        assertSanitized("<root></root>", "<root></root>\n\u0000junk & more");
+        assertSanitized("<root></root>", "<root></root>");
+        assertSanitized("", "no xml at all");
+        assertSanitized("", "");
+    }
+
+    /**
+     * every part of an entity, of the CDATA markers and of the closing > lands on the end of the buffer once
+     */
+    @Test
+    public void bufferBoundaries_sameResult() throws Exception {
+        String input = "&amp;<![CDATA[a & b]]>&c;&#39;&<b>R&B</b>";
+        String expected = "&amp;<![CDATA[a & b]]>&c;&#39;&amp;<b>R&amp;B</b>";
+        for (int padding = XmlSanitizingReader.BUFFER_SIZE - input.length() - 4;
+                padding < XmlSanitizingReader.BUFFER_SIZE + 4; padding++) {
+            String text = repeat('x', padding);
+            assertSanitized("<a>" + text + expected + "</a>", "??<a>" + text + input + "</a>junk");
+        }
+    }
+
+    @Test
+    public void longDocument_sameResult() throws Exception {
+        StringBuilder input = new StringBuilder("<root>");
+        StringBuilder expected = new StringBuilder("<root>");
+        for (int i = 0; i < 2000; i++) {
+            input.append("<song id=\"").append(i).append("\"><title>R&B ").append(i).append("</title>")
+                    .append("<art><![CDATA[http://x/?a=1&b=").append(i).append("]]></art></song>");
+            expected.append("<song id=\"").append(i).append("\"><title>R&amp;B ").append(i).append("</title>")
+                    .append("<art><![CDATA[http://x/?a=1&b=").append(i).append("]]></art></song>");
+        }
+        input.append("</root>");
+        expected.append("</root>");
+        assertSanitized(expected.toString(), "ï»" + input + "\n\n");
+    }
+
+    @Test
+    public void skip_skipsSanitizedCharacters() throws Exception {
+        XmlSanitizingReader reader = new XmlSanitizingReader(new StringReader("xx<a>&</a>"));
+        assertEquals(3, reader.skip(3));
+        assertEquals("&amp;</a>", readAll(reader, 4));
+    }
+
+    private static String repeat(final char c, final int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}